@@ -12,6 +12,8 @@ import com.amazonaws.services.cloudformation.AmazonCloudFormation;
 import com.amazonaws.services.cloudformation.AmazonCloudFormationClientBuilder;
 import com.amazonaws.services.identitymanagement.AmazonIdentityManagement;
 import com.amazonaws.services.identitymanagement.AmazonIdentityManagementClientBuilder;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.AWSKMSClientBuilder;
 import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
@@ -26,6 +28,9 @@ import dagger.Provides;
 
 import javax.annotation.Nullable;
 import javax.inject.Singleton;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Module
 @Singleton
@@ -52,12 +57,33 @@ public class CommonModule {
         return ObjectMapperSingleton.getObjectMapper();
     }
 
+    /**
+     * @apiNote the threads are daemons, so a pending call never keeps a container from exiting. The runtime is Java
+     * 11, so blocking SDK and JDBC calls overlap on this pool rather than on virtual threads.
+     */
+    @Provides
+    @Singleton
+    ExecutorService executor() {
+        final var count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            final var thread = new Thread(r, "dbdump-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     @Provides
     @Singleton
     AWSSecretsManager secretsManager() {
         return AWSSecretsManagerClientBuilder.defaultClient();
     }
 
+    @Provides
+    @Default
+    AWSKMS kms() {
+        return AWSKMSClientBuilder.defaultClient();
+    }
+
     /**
      * @apiNote SSM at the default region stores the values in the parameter store.
      */
@@ -4,9 +4,14 @@
 package aws.proserve.bcs.dr.dbdump.mysql;
 
 import aws.proserve.bcs.dr.s3.S3Constants;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
 import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest;
 
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 class BaseWorker {
 
     String getBucket(AWSSimpleSystemsManagement ssm) {
@@ -17,4 +22,33 @@ class BaseWorker {
         }
         return parameters.get(0).getValue();
     }
+
+    /**
+     * @return the metadata of an object that a copy can set, since the raw headers of a {@code HEAD} like the
+     * content length and storage class would be sent as they are.
+     */
+    static ObjectMetadata copyableMetadataOf(ObjectMetadata metadata) {
+        final var copyable = new ObjectMetadata();
+        copyable.setContentType(metadata.getContentType());
+        copyable.setContentEncoding(metadata.getContentEncoding());
+        copyable.setContentDisposition(metadata.getContentDisposition());
+        copyable.setContentLanguage(metadata.getContentLanguage());
+        copyable.setCacheControl(metadata.getCacheControl());
+        copyable.setUserMetadata(new HashMap<>(metadata.getUserMetadata()));
+        return copyable;
+    }
+
+    /**
+     * @return the result, or rethrows the original exception rather than a {@link CompletionException}.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,141 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A dump in the catalog. Entries of the same id are appended as the dump progresses, and the latest one wins. The id
+ * of a dump is its key, chosen before the dump starts, so that the entry {@link PruneDumps} adds for a dump that is
+ * not cataloged yet is the same one.
+ */
+public class CatalogEntry {
+    private String id;
+    private String key;
+    private String source;
+    private String[] databases;
+    private long startTime;
+    private long endTime;
+    private long size;
+    private String codec;
+    private String storageClass;
+    private Map<String, Long> phases;
+    private Status status;
+
+    public CatalogEntry() {
+    }
+
+    public CatalogEntry(CatalogEntry entry) {
+        this.id = entry.id;
+        this.key = entry.key;
+        this.source = entry.source;
+        this.databases = entry.databases == null ? null : entry.databases.clone();
+        this.startTime = entry.startTime;
+        this.endTime = entry.endTime;
+        this.size = entry.size;
+        this.codec = entry.codec;
+        this.storageClass = entry.storageClass;
+        this.phases = entry.phases == null ? null : new LinkedHashMap<>(entry.phases);
+        this.status = entry.status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String[] getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(String[] databases) {
+        this.databases = databases;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public String getStorageClass() {
+        return storageClass;
+    }
+
+    public void setStorageClass(String storageClass) {
+        this.storageClass = storageClass;
+    }
+
+    /**
+     * @apiNote milliseconds spent in each phase of the dump, in the order of the phases.
+     */
+    public Map<String, Long> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(Map<String, Long> phases) {
+        this.phases = phases;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public enum Status {
+        running,
+        succeeded,
+        failed,
+        deleted
+    }
+}
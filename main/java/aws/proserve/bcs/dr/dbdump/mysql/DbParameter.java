@@ -9,9 +9,31 @@ public class DbParameter {
     private String passwordId;
     private String host;
     private int port;
+    private DumpFormat format = DumpFormat.sql;
+    private int memoryLimitMb = 64;
+    private String kmsKeyId;
+    private String[] replicas;
+    private int maxReplicaLagSeconds = 300;
+
+    /**
+     * @return a copy of this parameter pointing at another endpoint of the same source.
+     */
+    DbParameter withEndpoint(String host, int port) {
+        final var parameter = new DbParameter();
+        parameter.setDatabases(databases);
+        parameter.setUsername(username);
+        parameter.setPasswordId(passwordId);
+        parameter.setHost(host);
+        parameter.setPort(port);
+        parameter.setFormat(format);
+        parameter.setMemoryLimitMb(memoryLimitMb);
+        parameter.setKmsKeyId(kmsKeyId);
+        parameter.setMaxReplicaLagSeconds(maxReplicaLagSeconds);
+        return parameter;
+    }
 
     String getConnectionString() {
-        return "jdbc:mysql://" + host + ":" + port + "?useSSL=false";
+        return "jdbc:mysql://" + host + ":" + port + "?useSSL=false&characterEncoding=UTF-8";
     }
 
     public String[] getDatabases() {
@@ -53,4 +75,53 @@ public class DbParameter {
     public void setPort(int port) {
         this.port = port;
     }
+
+    public DumpFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(DumpFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @apiNote the ceiling of buffers shared by the stages of a dump pipeline.
+     */
+    public int getMemoryLimitMb() {
+        return memoryLimitMb;
+    }
+
+    public void setMemoryLimitMb(int memoryLimitMb) {
+        this.memoryLimitMb = memoryLimitMb;
+    }
+
+    /**
+     * @apiNote if present, the dump is encrypted on the client side by a data key of this KMS key.
+     */
+    public String getKmsKeyId() {
+        return kmsKeyId;
+    }
+
+    public void setKmsKeyId(String kmsKeyId) {
+        this.kmsKeyId = kmsKeyId;
+    }
+
+    /**
+     * @apiNote candidate endpoints of the form {@code host[:port]} to dump from instead of the host, if healthy.
+     */
+    public String[] getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(String[] replicas) {
+        this.replicas = replicas;
+    }
+
+    public int getMaxReplicaLagSeconds() {
+        return maxReplicaLagSeconds;
+    }
+
+    public void setMaxReplicaLagSeconds(int maxReplicaLagSeconds) {
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+    }
 }
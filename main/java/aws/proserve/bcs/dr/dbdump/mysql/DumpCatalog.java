@@ -0,0 +1,161 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.dbdump.DbDumpConstants;
+import aws.proserve.bcs.dr.exception.PortalException;
+import aws.proserve.bcs.dr.lambda.annotation.Default;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * An append-only catalog of dumps in S3. Every change is a small log object, so concurrent dumps never overwrite each
+ * other, and {@link #compact()} folds the logs into a snapshot. Reading costs a snapshot get and a listing of the
+ * logs since the last compaction, and is cached in-process for the lifetime of a warm container.
+ *
+ * @apiNote {@link #compact()} is not safe to run concurrently, so only the scheduled {@link PruneDumps} calls it.
+ */
+@Singleton
+class DumpCatalog extends BaseWorker {
+    private static final String FOLDER = DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/catalog/";
+    private static final String SNAPSHOT = FOLDER + "snapshot.json";
+    private static final String LOG = FOLDER + "log/";
+    private static final long CACHE_MILLIS = 60_000;
+    private static final int THREADS = 10;
+    private static final int DELETE_BATCH = 1000;
+
+    private static volatile Map<String, CatalogEntry> cache;
+    private static volatile long cachedAt;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AmazonS3 s3;
+    private final AWSSimpleSystemsManagement ssm;
+    private final ObjectMapper mapper;
+
+    @Inject
+    DumpCatalog(@Default AmazonS3 s3,
+                @Default AWSSimpleSystemsManagement ssm,
+                ObjectMapper mapper) {
+        this.s3 = s3;
+        this.ssm = ssm;
+        this.mapper = mapper;
+    }
+
+    void append(CatalogEntry entry) {
+        try {
+            s3.putObject(getBucket(ssm), LOG + System.currentTimeMillis() + "-" + UUID.randomUUID() + ".json",
+                    mapper.writeValueAsString(entry));
+            cache = null;
+        } catch (IOException e) {
+            log.warn("Unable to append to dump catalog", e);
+            throw new PortalException("Unable to append to dump catalog", e);
+        }
+    }
+
+    /**
+     * @return the latest entry of every dump, excluding deleted ones.
+     */
+    Collection<CatalogEntry> entries() {
+        final var cached = cache;
+        if (cached != null && System.currentTimeMillis() - cachedAt < CACHE_MILLIS) {
+            return cached.values();
+        }
+
+        final var entries = load(getBucket(ssm), new ArrayList<>());
+        cache = Collections.unmodifiableMap(entries);
+        cachedAt = System.currentTimeMillis();
+        return entries.values();
+    }
+
+    void compact() {
+        final var bucket = getBucket(ssm);
+        final var logs = new ArrayList<String>();
+        final var entries = load(bucket, logs);
+        try {
+            s3.putObject(bucket, SNAPSHOT, mapper.writeValueAsString(entries));
+        } catch (IOException e) {
+            log.warn("Unable to compact dump catalog", e);
+            throw new PortalException("Unable to compact dump catalog", e);
+        }
+
+        for (int i = 0; i < logs.size(); i += DELETE_BATCH) {
+            s3.deleteObjects(new DeleteObjectsRequest(bucket)
+                    .withQuiet(true)
+                    .withKeys(logs.subList(i, Math.min(logs.size(), i + DELETE_BATCH)).toArray(new String[0])));
+        }
+        cache = null;
+        log.info("Compacted {} logs into a catalog of {} dumps", logs.size(), entries.size());
+    }
+
+    private Map<String, CatalogEntry> load(String bucket, List<String> logs) {
+        final var entries = new HashMap<String, CatalogEntry>();
+        if (s3.doesObjectExist(bucket, SNAPSHOT)) {
+            entries.putAll(read(bucket, SNAPSHOT, new TypeReference<Map<String, CatalogEntry>>() {
+            }));
+        }
+
+        final var request = new ListObjectsV2Request().withBucketName(bucket).withPrefix(LOG);
+        ListObjectsV2Result result;
+        do {
+            result = s3.listObjectsV2(request);
+            result.getObjectSummaries().forEach(s -> logs.add(s.getKey()));
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+
+        // log keys start with the time, so they are applied in the order of appending.
+        Collections.sort(logs);
+        final var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final var futures = new ArrayList<CompletableFuture<CatalogEntry>>();
+            for (var key : logs) {
+                futures.add(CompletableFuture.supplyAsync(() -> read(bucket, key, new TypeReference<CatalogEntry>() {
+                }), executor));
+            }
+            for (var future : futures) {
+                final var entry = future.join();
+                if (entry.getStatus() == CatalogEntry.Status.deleted) {
+                    entries.remove(entry.getId());
+                } else {
+                    entries.put(entry.getId(), entry);
+                }
+            }
+        } catch (CompletionException e) {
+            log.warn("Unable to read dump catalog", e.getCause());
+            throw new PortalException("Unable to read dump catalog", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    private <T> T read(String bucket, String key, TypeReference<T> type) {
+        try (final var stream = s3.getObject(bucket, key).getObjectContent()) {
+            return mapper.readValue(stream, type);
+        } catch (IOException e) {
+            throw new PortalException("Unable to read " + key, e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+/**
+ * @apiNote {@code tab} writes the schema DDL to {@code schema.sql} and every table to {@code <database>/<table>.txt}
+ * in the default format of {@code LOAD DATA}, so that it can be restored by {@code mysqlimport --local}. Generated
+ * columns are left out, and {@code <database>/<table>.columns} lists the columns in the file for
+ * {@code mysqlimport --columns}. The tables are read at one point in time, and the schema just before it, so DDL run
+ * during the dump is not captured.
+ * <p>
+ * A {@code sql} dump is uploaded as {@code <name>.sql.gz}, and a {@code tab} dump as {@code <name>.tab.tar.gz} with
+ * its files relative to the root of the archive.
+ */
+public enum DumpFormat {
+    sql,
+    tab
+}
@@ -4,15 +4,25 @@
 package aws.proserve.bcs.dr.dbdump.mysql;
 
 import aws.proserve.bcs.dr.dbdump.DbDumpConstants;
+import aws.proserve.bcs.dr.dbdump.pipeline.BufferPool;
+import aws.proserve.bcs.dr.dbdump.pipeline.ChecksumTransform;
+import aws.proserve.bcs.dr.dbdump.pipeline.EncryptTransform;
+import aws.proserve.bcs.dr.dbdump.pipeline.GzipTransform;
+import aws.proserve.bcs.dr.dbdump.pipeline.KmsKeyProvider;
+import aws.proserve.bcs.dr.dbdump.pipeline.Pipeline;
+import aws.proserve.bcs.dr.dbdump.pipeline.ProcessSource;
+import aws.proserve.bcs.dr.dbdump.pipeline.S3MultipartSink;
+import aws.proserve.bcs.dr.dbdump.pipeline.Source;
+import aws.proserve.bcs.dr.dbdump.pipeline.TarSource;
 import aws.proserve.bcs.dr.exception.PortalException;
 import aws.proserve.bcs.dr.lambda.StringHandler;
 import aws.proserve.bcs.dr.lambda.annotation.Default;
 import aws.proserve.bcs.dr.lambda.cmd.CommandExecutor;
-import aws.proserve.bcs.dr.lambda.cmd.SysCommands;
 import aws.proserve.bcs.dr.secret.SecretManager;
-import aws.proserve.bcs.dr.util.Preconditions;
+import com.amazonaws.services.kms.AWSKMS;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +31,21 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Stream;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 public class DumpMySql implements StringHandler<DbParameter> {
 
@@ -40,6 +61,12 @@ public class DumpMySql implements StringHandler<DbParameter> {
         parameter.setUsername(env("username"));
         parameter.setPasswordId(env("password_id"));
         parameter.setDatabases(env("databases").split(","));
+        Optional.ofNullable(System.getenv("format")).map(DumpFormat::valueOf).ifPresent(parameter::setFormat);
+        Optional.ofNullable(System.getenv("memory_limit_mb")).map(Integer::valueOf).ifPresent(parameter::setMemoryLimitMb);
+        parameter.setKmsKeyId(System.getenv("kms_key_id"));
+        Optional.ofNullable(System.getenv("replicas")).map(r -> r.split(",")).ifPresent(parameter::setReplicas);
+        Optional.ofNullable(System.getenv("max_replica_lag_seconds")).map(Integer::valueOf)
+                .ifPresent(parameter::setMaxReplicaLagSeconds);
         return parameter;
     }
 
@@ -54,118 +81,246 @@ public class DumpMySql implements StringHandler<DbParameter> {
 
     @Singleton
     static class Worker extends BaseWorker {
+        private static final int BUFFER_SIZE = 1 << 20;
+
         private final Logger log = LoggerFactory.getLogger(getClass());
 
         private final AmazonS3 s3;
         private final AWSSimpleSystemsManagement ssm;
+        private final AWSKMS kms;
         private final SecretManager secretManager;
+        private final Preflight preflight;
+        private final ReplicaSelector replicaSelector;
+        private final TableExporter tableExporter;
         private final GetDatabases.Worker getDatabases;
+        private final DumpCatalog catalog;
 
         @Inject
         Worker(@Default AmazonS3 s3,
                @Default AWSSimpleSystemsManagement ssm,
+               @Default AWSKMS kms,
                SecretManager secretManager,
-               GetDatabases.Worker getDatabases) {
+               Preflight preflight,
+               ReplicaSelector replicaSelector,
+               TableExporter tableExporter,
+               GetDatabases.Worker getDatabases,
+               DumpCatalog catalog) {
             this.s3 = s3;
             this.ssm = ssm;
+            this.kms = kms;
             this.secretManager = secretManager;
+            this.preflight = preflight;
+            this.replicaSelector = replicaSelector;
+            this.tableExporter = tableExporter;
             this.getDatabases = getDatabases;
+            this.catalog = catalog;
         }
 
-        private void checkDisk() {
-            try (final var executor = CommandExecutor.create("df")) {
-                final var result = executor.execute(SysCommands.df().humanReadable());
-                if (result.isSuccessful()) {
-                    log.info("checkDisk is ok: {}", result.getOutput());
-                } else {
-                    log.warn("Unable to check disk: {}", result);
-                    throw new PortalException("Unable to check disk: " + result);
-                }
-            }
-        }
-
-        private void checkVersion() {
-            try (final var executor = CommandExecutor.create("MySqlDump")) {
-                final var result = executor.execute(MySqlCommands.mysqldump().version());
-                if (result.isSuccessful()) {
-                    log.info("checkVersion is ok: mysqldump version is {}", result.getOutput());
-                } else {
-                    log.warn("Unable to check version of mysqldump: {}", result);
-                    throw new PortalException("Unable to check version of mysqldump: " + result);
-                }
-            }
-        }
-
-        private void checkDatabases(DbParameter parameter) {
-            final var set = Set.of(getDatabases.getDatabases(parameter));
-            Preconditions.checkArgument(Stream.of(parameter.getDatabases()).allMatch(set::contains),
-                    "Unable to find some databases: " + Arrays.toString(parameter.getDatabases()));
-            log.info("checkDatabase is ok: queried {} databases.", set.size());
-        }
-
-        private File dumpToLocalDisk(DbParameter parameter) {
+        private File dumpToLocalFolder(DbParameter parameter) {
             try (final var executor = CommandExecutor.create("MySqlDump")) {
-                final var file = File.createTempFile("drportal-dbdump-mysql-", ".sql", new File(DbDumpConstants.DBDUMP_FOLDER));
+                final var folder = Files.createTempDirectory(Path.of(DbDumpConstants.DBDUMP_FOLDER), "drportal-dbdump-mysql-").toFile();
                 final var result = executor.execute(MySqlCommands.mysqldump()
                         .user(parameter.getUsername())
                         .password(secretManager.getSecret(parameter.getPasswordId()))
                         .host(parameter.getHost())
                         .port(parameter.getPort())
                         .databases(parameter.getDatabases())
-                        .resultFile(file.getAbsolutePath())
+                        .resultFile(new File(folder, "schema.sql").getAbsolutePath())
+                        .noData()
                         .events()
                         .routines()
                         .triggers()
-                        .compress()
-                        .orderByPrimary()
-                        .singleTransaction());
-                if (result.isSuccessful()) {
-                    log.info("dumpToLocalDisk is ok, to {}", file);
-                    return file;
-                } else {
-                    log.warn("Unable to dump mysql: {}", result);
-                    throw new PortalException("Unable to dump mysql: " + result);
+                        .compress());
+                if (!result.isSuccessful()) {
+                    log.warn("Unable to dump mysql schema: {}", result);
+                    throw new PortalException("Unable to dump mysql schema: " + result);
                 }
+
+                tableExporter.export(parameter, folder);
+                log.info("dumpToLocalFolder is ok, to {}", folder);
+                return folder;
             } catch (IOException e) {
                 log.warn("Unable to run mysqldump", e);
                 throw new PortalException("Unable to run mysqldump", e);
             }
         }
 
-        private File compress(File file) {
-            try (final var executor = CommandExecutor.create("Tar")) {
-                final var target = File.createTempFile("drportal-dbdump-mysql-", ".tar.gz", new File(DbDumpConstants.DBDUMP_FOLDER));
-                final var result = executor.execute(SysCommands.tar()
-                        .compressFile(target.getAbsolutePath(), file.getAbsolutePath()));
-                if (result.isSuccessful()) {
-                    log.info("compress is ok, to {}", target);
-                    return new File(target.getAbsolutePath());
-                } else {
-                    log.warn("Unable to compress: {}", result);
-                    throw new PortalException("Unable to compress: " + result);
+        /**
+         * @return the size of the database files, doubled as a margin for the text of the dump, which is never
+         * compressed much below them.
+         */
+        private long estimateSize(DbParameter endpoint) {
+            final var databases = endpoint.getDatabases();
+            final var query = "select coalesce(sum(DATA_LENGTH + INDEX_LENGTH), 0) from information_schema.TABLES"
+                    + " where TABLE_SCHEMA in (" + String.join(", ", Collections.nCopies(databases.length, "?")) + ")";
+            try (final var connection = getDatabases.connect(endpoint);
+                 final var statement = connection.prepareStatement(query)) {
+                for (int i = 0; i < databases.length; i++) {
+                    statement.setString(i + 1, databases[i]);
                 }
-            } catch (IOException e) {
-                log.warn("Unable to compress", e);
-                throw new PortalException("Unable to compress", e);
+                try (final var rs = statement.executeQuery()) {
+                    rs.next();
+                    return 2 * rs.getLong(1);
+                }
+            } catch (ClassNotFoundException | SQLException e) {
+                log.warn("Unable to estimate the size of the dump", e);
+                throw new PortalException("Unable to estimate the size of the dump", e);
             }
         }
 
-        private void copyToS3(File file) {
-            s3.putObject(getBucket(ssm), DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/" + file.getName(), file);
-            log.info("copyToS3 is ok: {}", file.getName());
+        /**
+         * Sizes the upload before anything is dumped, as the stages cannot make do with less than their buffers.
+         *
+         * @return the parallelism of encryption from the buffers left over, or {@code 0} without encryption.
+         */
+        private static int parallelismOf(DbParameter parameter, int partSize) {
+            final var encrypt = parameter.getKmsKeyId() != null;
+            final var spare = parameter.getMemoryLimitMb() * (1L << 20) / BUFFER_SIZE
+                    - Pipeline.baseBuffers(encrypt ? 5 : 4) - GzipTransform.RESERVED_BUFFERS
+                    - S3MultipartSink.reservedBuffersOf(partSize, BUFFER_SIZE)
+                    - (encrypt ? EncryptTransform.reservedBuffersOf(1) : 0);
+            if (spare < 0) {
+                throw new PortalException("memory_limit_mb of " + parameter.getMemoryLimitMb() + " is "
+                        + -spare * BUFFER_SIZE / (1 << 20) + " MB short for parts of " + partSize + " bytes");
+            }
+            // every segment more in a batch takes two more buffers.
+            return encrypt ? (int) Math.min(Runtime.getRuntime().availableProcessors(), 1 + spare / 2) : 0;
+        }
+
+        private static List<String> mysqldump(DbParameter endpoint) {
+            final var command = new ArrayList<>(List.of("mysqldump",
+                    "--user=" + endpoint.getUsername(),
+                    "--host=" + endpoint.getHost(),
+                    "--port=" + endpoint.getPort(),
+                    "--events",
+                    "--routines",
+                    "--triggers",
+                    "--compress",
+                    "--order-by-primary",
+                    "--single-transaction",
+                    "--databases"));
+            command.addAll(Arrays.asList(endpoint.getDatabases()));
+            return command;
+        }
+
+        /**
+         * Streams the source through gzip, a checksum and the optional encryption to S3, so that no compressed copy
+         * is written to disk.
+         *
+         * @return the size of the object.
+         */
+        private long upload(DbParameter parameter, String name, Callable<Source> source, String key,
+                            int partSize, int parallelism) {
+            final var checksum = new ChecksumTransform("SHA-256");
+            final var metadata = new ObjectMetadata();
+            metadata.addUserMetadata(PruneDumps.SOURCE, parameter.getHost() + ":" + parameter.getPort());
+            try {
+                final var pool = new BufferPool(BUFFER_SIZE, parameter.getMemoryLimitMb() * (1L << 20));
+                final var pipeline = new Pipeline(pool)
+                        .source(name, source.call())
+                        .transform("gzip", new GzipTransform(Deflater.DEFAULT_COMPRESSION))
+                        .transform("checksum", checksum);
+                if (parallelism > 0) {
+                    metadata.addUserMetadata("encryption", "segmented-aes-gcm");
+                    pipeline.transform("encrypt", new EncryptTransform(
+                            new KmsKeyProvider(kms, parameter.getKmsKeyId()), BUFFER_SIZE, parallelism));
+                }
+                final var stats = pipeline.sink("s3", new S3MultipartSink(s3, getBucket(ssm), key, metadata,
+                        partSize, pool)).run();
+                stats.forEach(s -> log.info("upload stage {}", s));
+                log.info("upload is ok: {}, sha256 {}", key, checksum.getHex());
+                return stats.get(stats.size() - 1).getBytes();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PortalException("Interrupted while uploading to S3", e);
+            } catch (Exception e) {
+                log.warn("Unable to upload to S3", e);
+                throw new PortalException("Unable to upload to S3", e);
+            }
         }
 
         String dump(DbParameter parameter) {
             log.info("Dump databases: {}", String.join(", ", parameter.getDatabases()));
 
-            checkDisk();
-            checkVersion();
-            checkDatabases(parameter);
-            final var file = compress(dumpToLocalDisk(parameter));
-            copyToS3(file);
+            final var tab = parameter.getFormat() == DumpFormat.tab;
+            final var extension = tab ? ".tar.gz" : ".gz";
+            final var name = PruneDumps.DUMP_PREFIX + Long.toUnsignedString(ThreadLocalRandom.current().nextLong())
+                    + "." + parameter.getFormat() + extension;
+            final var key = DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/" + name;
+
+            final var entry = new CatalogEntry();
+            entry.setId(key);
+            entry.setSource(parameter.getHost() + ":" + parameter.getPort());
+            entry.setDatabases(parameter.getDatabases());
+            entry.setStartTime(System.currentTimeMillis());
+            entry.setCodec(parameter.getFormat() + extension + (parameter.getKmsKeyId() == null ? "" : ".segmented-aes-gcm"));
+            entry.setStatus(CatalogEntry.Status.running);
+            record(entry);
+
+            final var phases = new LinkedHashMap<String, Long>();
+            var phaseStart = System.nanoTime();
+            try {
+                final var readiness = preflight.check(parameter);
+                if (!readiness.isReady()) {
+                    throw new PortalException("Not ready to dump: " + readiness);
+                }
+                phaseStart = lap(phases, "preflight", phaseStart);
+
+                final var endpoint = replicaSelector.select(parameter);
+                final var partSize = S3MultipartSink.partSizeOf(estimateSize(endpoint));
+                final var parallelism = parallelismOf(parameter, partSize);
+                phaseStart = lap(phases, "select", phaseStart);
+
+                final long size;
+                if (tab) {
+                    final var folder = dumpToLocalFolder(endpoint);
+                    phaseStart = lap(phases, "export", phaseStart);
+                    size = upload(parameter, "tar", () -> new TarSource(folder.toPath()), key, partSize, parallelism);
+                    lap(phases, "archive", phaseStart);
+                } else {
+                    final var password = secretManager.getSecret(endpoint.getPasswordId());
+                    size = upload(parameter, "mysqldump",
+                            () -> new ProcessSource(mysqldump(endpoint), Map.of("MYSQL_PWD", password)),
+                            key, partSize, parallelism);
+                    lap(phases, "dump", phaseStart);
+                }
+
+                entry.setKey(key);
+                entry.setSize(size);
+                entry.setStatus(CatalogEntry.Status.succeeded);
+                final var millis = phases.values().stream().mapToLong(Long::longValue).sum();
+                log.info("Dumped to {} of {} bytes in {} ms ({} MB/s compressed), phases {}", name, size, millis,
+                        millis == 0 ? "-" : String.format("%.1f", size / 1048.576 / millis), phases);
+                return name;
+            } catch (RuntimeException e) {
+                entry.setStatus(CatalogEntry.Status.failed);
+                throw e;
+            } finally {
+                entry.setEndTime(System.currentTimeMillis());
+                entry.setPhases(phases);
+                record(entry);
+            }
+        }
+
+        /**
+         * The catalog only indexes dumps, so failing to record one never fails the dump. {@link PruneDumps} adds the
+         * dumps missing from it.
+         */
+        private void record(CatalogEntry entry) {
+            try {
+                catalog.append(entry);
+            } catch (RuntimeException e) {
+                log.warn("Unable to record dump " + entry.getId() + " as " + entry.getStatus() + " in catalog", e);
+            }
+        }
 
-            log.info("Dumped and compressed to file {}", file.getName());
-            return file.getName();
+        /**
+         * @return the start of the next phase.
+         */
+        private static long lap(Map<String, Long> phases, String phase, long start) {
+            final var now = System.nanoTime();
+            phases.put(phase, TimeUnit.NANOSECONDS.toMillis(now - start));
+            return now;
         }
     }
 }
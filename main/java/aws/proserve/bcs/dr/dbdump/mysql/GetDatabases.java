@@ -34,13 +34,30 @@ public class GetDatabases implements StringsHandler<DbParameter> {
             this.secretManager = secretManager;
         }
 
+        Connection connect(DbParameter parameter) throws ClassNotFoundException, SQLException {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            return DriverManager.getConnection(parameter.getConnectionString(),
+                    parameter.getUsername(),
+                    secretManager.getSecret(parameter.getPasswordId()));
+        }
+
+        /**
+         * @param timeoutSeconds bounds connecting and every read, so that an unreachable endpoint fails rather than
+         * hangs.
+         */
+        Connection connect(DbParameter parameter, int timeoutSeconds) throws ClassNotFoundException, SQLException {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            final var millis = timeoutSeconds * 1000;
+            return DriverManager.getConnection(parameter.getConnectionString()
+                            + "&connectTimeout=" + millis + "&socketTimeout=" + millis,
+                    parameter.getUsername(),
+                    secretManager.getSecret(parameter.getPasswordId()));
+        }
+
         String[] getDatabases(DbParameter parameter) {
             Connection connection = null;
             try {
-                Class.forName("com.mysql.cj.jdbc.Driver");
-                connection = DriverManager.getConnection(parameter.getConnectionString(),
-                        parameter.getUsername(),
-                        secretManager.getSecret(parameter.getPasswordId()));
+                connection = connect(parameter);
                 final var statement = connection.createStatement();
                 final var rs = statement.executeQuery("show databases");
                 final var databases = new ArrayList<String>();
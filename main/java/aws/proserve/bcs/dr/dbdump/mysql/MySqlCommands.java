@@ -51,6 +51,10 @@ public final class MySqlCommands {
             return add("--events");
         }
 
+        public MySqlDump noData() {
+            return add("--no-data");
+        }
+
         public MySqlDump orderByPrimary() {
             return add("--order-by-primary");
         }
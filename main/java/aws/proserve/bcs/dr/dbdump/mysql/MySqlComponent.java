@@ -44,6 +44,12 @@ public interface MySqlComponent {
 
     CheckEnvironment.Worker checkEnvironment();
 
+    SnapshotSchema.Worker snapshotSchema();
+
+    PruneDumps.Worker pruneDumps();
+
+    QueryCatalog.Worker queryCatalog();
+
     @Component.Builder
     interface Builder {
 
@@ -0,0 +1,176 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.exception.PortalException;
+import aws.proserve.bcs.dr.lambda.cmd.CommandExecutor;
+import aws.proserve.bcs.dr.lambda.cmd.SysCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the checks before a dump concurrently, each with its own timeout, and reports them all instead of failing on
+ * the first one. The version of mysqldump cannot change within a process, so it is checked only once.
+ */
+@Singleton
+class Preflight {
+    private static final long DISK_TIMEOUT_SECONDS = 30;
+    private static final long VERSION_TIMEOUT_SECONDS = 30;
+    private static final long DATABASES_TIMEOUT_SECONDS = 60;
+
+    private static volatile String mysqldumpVersion;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final GetDatabases.Worker getDatabases;
+    private final ExecutorService executor;
+
+    @Inject
+    Preflight(GetDatabases.Worker getDatabases,
+              ExecutorService executor) {
+        this.getDatabases = getDatabases;
+        this.executor = executor;
+    }
+
+    Readiness check(DbParameter parameter) {
+        final var probes = Stream.of(
+                probe("disk", this::checkDisk, DISK_TIMEOUT_SECONDS),
+                probe("version", this::checkVersion, VERSION_TIMEOUT_SECONDS),
+                probe("databases", () -> checkDatabases(parameter), DATABASES_TIMEOUT_SECONDS))
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+        final var readiness = new Readiness(probes);
+        log.info("Preflight: {}", readiness);
+        return readiness;
+    }
+
+    private CompletableFuture<Probe> probe(String name, Supplier<String> check, long timeoutSeconds) {
+        final var start = System.nanoTime();
+        return CompletableFuture.supplyAsync(check, executor)
+                .orTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .handle((detail, e) -> {
+                    final var cause = e instanceof CompletionException ? e.getCause() : e;
+                    final var millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (cause == null) {
+                        return new Probe(name, true, detail, millis);
+                    } else if (cause instanceof TimeoutException) {
+                        return new Probe(name, false, "timed out after " + timeoutSeconds + " seconds", millis);
+                    } else {
+                        log.warn("Preflight " + name + " failed", cause);
+                        return new Probe(name, false, cause.getMessage(), millis);
+                    }
+                });
+    }
+
+    private String checkDisk() {
+        try (final var executor = CommandExecutor.create("df")) {
+            final var result = executor.execute(SysCommands.df().humanReadable());
+            if (result.isSuccessful()) {
+                return result.getOutput();
+            } else {
+                throw new PortalException("Unable to check disk: " + result);
+            }
+        }
+    }
+
+    private String checkVersion() {
+        final var cached = mysqldumpVersion;
+        if (cached != null) {
+            return cached;
+        }
+
+        try (final var executor = CommandExecutor.create("MySqlDump")) {
+            final var result = executor.execute(MySqlCommands.mysqldump().version());
+            if (result.isSuccessful()) {
+                mysqldumpVersion = result.getOutput();
+                return mysqldumpVersion;
+            } else {
+                throw new PortalException("Unable to check version of mysqldump: " + result);
+            }
+        }
+    }
+
+    private String checkDatabases(DbParameter parameter) {
+        final var databases = getDatabases.getDatabases(parameter);
+        if (databases == null) {
+            throw new PortalException("Unable to query databases: " + parameter.getConnectionString());
+        }
+
+        final var set = new HashSet<>(List.of(databases));
+        final var missing = Stream.of(parameter.getDatabases()).filter(d -> !set.contains(d)).collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            throw new PortalException("Unable to find some databases: " + missing);
+        }
+        return "queried " + set.size() + " databases";
+    }
+
+    static class Readiness {
+        private final List<Probe> probes;
+
+        Readiness(List<Probe> probes) {
+            this.probes = probes;
+        }
+
+        public boolean isReady() {
+            return probes.stream().allMatch(Probe::isOk);
+        }
+
+        public List<Probe> getProbes() {
+            return probes;
+        }
+
+        @Override
+        public String toString() {
+            return (isReady() ? "ready " : "not ready ") + probes;
+        }
+    }
+
+    static class Probe {
+        private final String name;
+        private final boolean ok;
+        private final String detail;
+        private final long millis;
+
+        Probe(String name, boolean ok, String detail, long millis) {
+            this.name = name;
+            this.ok = ok;
+            this.detail = detail;
+            this.millis = millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isOk() {
+            return ok;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return name + (ok ? " is ok" : " failed") + " in " + millis + " ms: " + detail;
+        }
+    }
+}
@@ -23,6 +23,10 @@ import com.amazonaws.services.lambda.model.UpdateFunctionConfigurationRequest;
 import com.amazonaws.services.lambda.model.VpcConfig;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
 import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest;
 import org.slf4j.Logger;
@@ -34,10 +38,13 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Request> {
     private static final String LAMBDA_ROLE = "DRPortal-DbDump-MySql-Lambda";
+    private static final String SOURCE_ETAG = "source-etag";
 
     @Override
     public void handleRequest(Request request, Context context) {
@@ -58,6 +65,7 @@ public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Reques
         private final AmazonIdentityManagement sourceIam;
         private final AWSLambda sourceLambda;
         private final CheckEnvironment.Worker checkEnvironment;
+        private final ExecutorService executor;
 
         @Inject
         Worker(@Default AmazonS3 s3,
@@ -67,7 +75,8 @@ public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Reques
                @Source AmazonCloudFormation sourceCfn,
                @Source AmazonIdentityManagement sourceIam,
                @Source AWSLambda sourceLambda,
-               CheckEnvironment.Worker checkEnvironment) {
+               CheckEnvironment.Worker checkEnvironment,
+               ExecutorService executor) {
             this.s3 = s3;
             this.sourceS3 = sourceS3;
             this.ssm = ssm;
@@ -76,12 +85,24 @@ public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Reques
             this.sourceIam = sourceIam;
             this.sourceLambda = sourceLambda;
             this.checkEnvironment = checkEnvironment;
+            this.executor = executor;
         }
 
+        /**
+         * Deploys the bucket while looking up the lambda and its role, as they do not depend on each other. Only the
+         * asset copy waits for the bucket.
+         */
         void prepare(Request request) {
             log.info("Prepare environment at region {}", request.getRegion());
-            deployBucket();
-            createLambda();
+            final var bucket = CompletableFuture.runAsync(this::deployBucket, executor);
+            final var role = CompletableFuture.supplyAsync(checkEnvironment::checkLambda, executor)
+                    .thenCompose(exists -> exists
+                            ? CompletableFuture.completedFuture(Optional.<Role>empty())
+                            : CompletableFuture.supplyAsync(this::findLambdaRole, executor));
+
+            join(bucket);
+            join(role).ifPresentOrElse(this::createLambda,
+                    () -> log.info("Lambda {} already exists.", DbDumpConstants.MYSQL_GET_DATABASES));
             configureLambda(request);
         }
 
@@ -98,18 +119,57 @@ public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Reques
             updater.update(body);
         }
 
+        /**
+         * Copies the lambda asset server-side, which turns into multipart copy for large objects. It falls back to
+         * streaming only if the source account cannot read the default bucket, and skips if the asset is up to date.
+         */
         private void copyLambdaAsset() {
-            final var source = s3.getObject(getBucket(ssm), S3Constants.LAMBDA_DBDUMP_MYSQL);
-            sourceS3.putObject(getBucket(sourceSsm), S3Constants.LAMBDA_DBDUMP_MYSQL,
-                    source.getObjectContent(), source.getObjectMetadata());
+            final var futureSourceBucket = CompletableFuture.supplyAsync(() -> getBucket(sourceSsm), executor);
+            final var bucket = getBucket(ssm);
+            final var key = S3Constants.LAMBDA_DBDUMP_MYSQL;
+            final var metadata = s3.getObjectMetadata(bucket, key);
+            final var sourceBucket = join(futureSourceBucket);
+            if (isUpToDate(metadata, sourceBucket)) {
+                log.info("Lambda asset {} is up to date at {}", key, sourceBucket);
+                return;
+            }
+
+            final var newMetadata = copyableMetadataOf(metadata);
+            newMetadata.addUserMetadata(SOURCE_ETAG, metadata.getETag());
+            try {
+                final var transfer = TransferManagerBuilder.standard().withS3Client(sourceS3).build();
+                try {
+                    transfer.copy(new CopyObjectRequest(bucket, key, sourceBucket, key)
+                            .withNewObjectMetadata(newMetadata), s3, null).waitForCopyResult();
+                    log.info("Copied lambda asset {} to {} server-side", key, sourceBucket);
+                } finally {
+                    transfer.shutdownNow(false);
+                }
+            } catch (AmazonS3Exception e) {
+                if (!"AccessDenied".equals(e.getErrorCode())) {
+                    throw e;
+                }
+                log.info("Unable to copy lambda asset server-side, stream it instead: {}", e.getErrorMessage());
+                final var source = s3.getObject(bucket, key);
+                newMetadata.setContentLength(metadata.getContentLength()); // streams rather than buffers the asset.
+                sourceS3.putObject(sourceBucket, key, source.getObjectContent(), newMetadata);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PortalException("Interrupted while copying lambda asset", e);
+            }
         }
 
-        private void createLambda() {
-            if (checkEnvironment.checkLambda()) {
-                log.info("Lambda {} already exists.", DbDumpConstants.MYSQL_GET_DATABASES);
-                return;
+        private boolean isUpToDate(ObjectMetadata metadata, String sourceBucket) {
+            if (!sourceS3.doesObjectExist(sourceBucket, S3Constants.LAMBDA_DBDUMP_MYSQL)) {
+                return false;
             }
 
+            final var existing = sourceS3.getObjectMetadata(sourceBucket, S3Constants.LAMBDA_DBDUMP_MYSQL);
+            return metadata.getETag().equals(existing.getETag())
+                    || metadata.getETag().equals(existing.getUserMetaDataOf(SOURCE_ETAG));
+        }
+
+        private Optional<Role> findLambdaRole() {
             final var request = new ListRolesRequest();
             ListRolesResult result;
             Optional<Role> lambdaRole;
@@ -125,13 +185,16 @@ public class PrepareEnvironment implements VoidHandler<PrepareEnvironment.Reques
             if (lambdaRole.isEmpty()) {
                 throw new PortalException("Expected role is missing: " + LAMBDA_ROLE);
             }
+            return lambdaRole;
+        }
 
+        private void createLambda(Role lambdaRole) {
             copyLambdaAsset();
             sourceLambda.createFunction(new CreateFunctionRequest()
                     .withFunctionName(DbDumpConstants.MYSQL_GET_DATABASES)
                     .withRuntime(Runtime.Java11)
                     .withHandler("aws.proserve.bcs.dr.dbdump.mysql.GetDatabases::handleRequest")
-                    .withRole(lambdaRole.get().getArn())
+                    .withRole(lambdaRole.getArn())
                     .withMemorySize(1024)
                     .withTimeout(10 * 60)
                     .withCode(new FunctionCode()
@@ -0,0 +1,319 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.dbdump.DbDumpConstants;
+import aws.proserve.bcs.dr.exception.PortalException;
+import aws.proserve.bcs.dr.lambda.VoidHandler;
+import aws.proserve.bcs.dr.lambda.annotation.Default;
+import aws.proserve.bcs.dr.util.Preconditions;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.transfer.Copy;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a grandfather-father-son retention to the dumps of every source, and moves the dumps past an age to a
+ * cheaper storage class. Dumps are tracked by the {@link DumpCatalog}, which it also compacts. Dumps of earlier
+ * versions without a source are all kept, as they cannot be told apart.
+ */
+public class PruneDumps implements VoidHandler<PruneDumps.Request> {
+    static final String SOURCE = "source";
+    static final String DUMP_PREFIX = "drportal-dbdump-mysql-";
+    private static final String UNKNOWN_SOURCE = "unknown";
+    private static final int DELETE_BATCH = 1000;
+    private static final int THREADS = 10;
+
+    @Override
+    public void handleRequest(Request request, Context context) {
+        MySqlComponent.build().pruneDumps().prune(request);
+    }
+
+    @Singleton
+    static class Worker extends BaseWorker {
+        private final Logger log = LoggerFactory.getLogger(getClass());
+
+        private final AmazonS3 s3;
+        private final AWSSimpleSystemsManagement ssm;
+        private final DumpCatalog catalog;
+
+        @Inject
+        Worker(@Default AmazonS3 s3,
+               @Default AWSSimpleSystemsManagement ssm,
+               DumpCatalog catalog) {
+            this.s3 = s3;
+            this.ssm = ssm;
+            this.catalog = catalog;
+        }
+
+        void prune(Request request) {
+            Preconditions.checkArgument(request.getDaily() > 0, "At least one daily dump has to be kept.");
+
+            final var bucket = getBucket(ssm);
+            final var executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                final var cataloged = new HashMap<String, CatalogEntry>();
+                final var stale = new ArrayList<CatalogEntry>();
+                final var threshold = Instant.now().minus(request.getDaily(), ChronoUnit.DAYS).toEpochMilli();
+                // entries are shared by the cache of the catalog, so only copies are changed.
+                for (var cachedEntry : catalog.entries()) {
+                    final var entry = new CatalogEntry(cachedEntry);
+                    if (entry.getKey() != null) {
+                        cataloged.put(entry.getKey(), entry);
+                    } else if (entry.getStartTime() < threshold) {
+                        stale.add(entry); // failed, or never finished.
+                    }
+                }
+
+                final var entries = list(bucket, DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/" + DUMP_PREFIX,
+                        cataloged, executor);
+                cataloged.values().stream().filter(e -> !entries.containsKey(e.getKey())).forEach(stale::add);
+
+                final var kept = new ArrayList<CatalogEntry>();
+                final var deleted = new ArrayList<CatalogEntry>();
+                for (var entry : entries.values()) {
+                    if (UNKNOWN_SOURCE.equals(entry.getSource())) {
+                        kept.add(entry); // dumps of different sources cannot share the periods.
+                    }
+                }
+                entries.values().stream()
+                        .filter(e -> !UNKNOWN_SOURCE.equals(e.getSource()))
+                        .collect(Collectors.groupingBy(CatalogEntry::getSource))
+                        .forEach((source, list) -> {
+                            final var keep = keep(list, request);
+                            list.forEach(e -> (keep.contains(e.getKey()) ? kept : deleted).add(e));
+                        });
+
+                delete(bucket, deleted);
+                if (request.getArchiveDays() > 0) {
+                    archive(bucket, kept, request);
+                }
+                stale.addAll(deleted);
+                for (var entry : stale) {
+                    entry.setStatus(CatalogEntry.Status.deleted);
+                    catalog.append(entry);
+                }
+                catalog.compact();
+                log.info("Pruned dumps: kept {}, deleted {}", kept.size(), deleted.size());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Dump names are the prefix followed by an unsigned long, so each leading digit is listed in parallel.
+         * Dumps missing from the catalog, like those of earlier versions, are looked up and added to it.
+         */
+        private Map<String, CatalogEntry> list(String bucket, String prefix, Map<String, CatalogEntry> cataloged,
+                                               ExecutorService executor) {
+            final var futures = new ArrayList<CompletableFuture<List<S3ObjectSummary>>>();
+            for (int digit = 0; digit < 10; digit++) {
+                final var request = new ListObjectsV2Request().withBucketName(bucket).withPrefix(prefix + digit);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    final var summaries = new ArrayList<S3ObjectSummary>();
+                    ListObjectsV2Result result;
+                    do {
+                        result = s3.listObjectsV2(request);
+                        summaries.addAll(result.getObjectSummaries());
+                        request.setContinuationToken(result.getNextContinuationToken());
+                    } while (result.isTruncated());
+                    return summaries;
+                }, executor));
+            }
+
+            try {
+                final var lookups = new ArrayList<CompletableFuture<CatalogEntry>>();
+                for (var future : futures) {
+                    for (var summary : future.join()) {
+                        final var entry = cataloged.get(summary.getKey());
+                        if (entry != null) {
+                            entry.setStorageClass(summary.getStorageClass());
+                            lookups.add(CompletableFuture.completedFuture(entry));
+                        } else {
+                            lookups.add(CompletableFuture.supplyAsync(() -> lookup(bucket, summary), executor));
+                        }
+                    }
+                }
+
+                final var entries = new HashMap<String, CatalogEntry>();
+                lookups.forEach(f -> {
+                    final var entry = f.join();
+                    entries.put(entry.getKey(), entry);
+                });
+                return entries;
+            } catch (CompletionException e) {
+                log.warn("Unable to list dumps", e.getCause());
+                throw new PortalException("Unable to list dumps", e.getCause());
+            }
+        }
+
+        private CatalogEntry lookup(String bucket, S3ObjectSummary summary) {
+            final var source = s3.getObjectMetadata(bucket, summary.getKey()).getUserMetaDataOf(SOURCE);
+            final var entry = new CatalogEntry();
+            entry.setId(summary.getKey());
+            entry.setKey(summary.getKey());
+            entry.setSource(source == null ? UNKNOWN_SOURCE : source);
+            entry.setStartTime(summary.getLastModified().getTime());
+            entry.setEndTime(summary.getLastModified().getTime());
+            entry.setSize(summary.getSize());
+            entry.setStorageClass(summary.getStorageClass());
+            entry.setStatus(CatalogEntry.Status.succeeded);
+            catalog.append(entry);
+            return entry;
+        }
+
+        static Set<String> keep(List<CatalogEntry> entries, Request request) {
+            final var sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparingLong(CatalogEntry::getStartTime).reversed());
+
+            final var kept = new HashSet<String>();
+            keep(sorted, request.getDaily(), LocalDate::from, kept);
+            keep(sorted, request.getWeekly(),
+                    d -> d.get(IsoFields.WEEK_BASED_YEAR) * 100 + d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR), kept);
+            keep(sorted, request.getMonthly(), YearMonth::from, kept);
+            return kept;
+        }
+
+        /**
+         * Keeps the latest dump of each of the latest {@code count} periods.
+         */
+        private static void keep(List<CatalogEntry> sorted, int count, Function<LocalDate, Object> period,
+                                 Set<String> kept) {
+            final var periods = new HashSet<>();
+            for (var entry : sorted) {
+                if (periods.size() == count) {
+                    return;
+                }
+                if (periods.add(period.apply(LocalDate.ofInstant(Instant.ofEpochMilli(entry.getStartTime()), ZoneOffset.UTC)))) {
+                    kept.add(entry.getKey());
+                }
+            }
+        }
+
+        private void delete(String bucket, List<CatalogEntry> entries) {
+            for (int i = 0; i < entries.size(); i += DELETE_BATCH) {
+                final var batch = entries.subList(i, Math.min(entries.size(), i + DELETE_BATCH));
+                s3.deleteObjects(new DeleteObjectsRequest(bucket)
+                        .withQuiet(true)
+                        .withKeys(batch.stream().map(CatalogEntry::getKey).toArray(String[]::new)));
+                log.debug("Deleted {} dumps", batch.size());
+            }
+        }
+
+        /**
+         * Copies dumps in place with the new storage class, which goes multipart for large dumps. A multipart copy does
+         * not carry the user metadata over, so it is passed along.
+         */
+        private void archive(String bucket, List<CatalogEntry> entries, Request request) {
+            final var storageClass = StorageClass.fromValue(request.getStorageClass());
+            final var threshold = Instant.now().minus(request.getArchiveDays(), ChronoUnit.DAYS).toEpochMilli();
+            final var transfer = TransferManagerBuilder.standard().withS3Client(s3).build();
+            try {
+                final var copies = new ArrayList<Copy>();
+                for (var entry : entries) {
+                    if (entry.getStartTime() <= threshold && isStandard(entry.getStorageClass())) {
+                        final var metadata = copyableMetadataOf(s3.getObjectMetadata(bucket, entry.getKey()));
+                        copies.add(transfer.copy(new CopyObjectRequest(bucket, entry.getKey(), bucket, entry.getKey())
+                                .withNewObjectMetadata(metadata)
+                                .withStorageClass(storageClass)));
+                        entry.setStorageClass(storageClass.toString());
+                        catalog.append(entry);
+                    }
+                }
+                for (var copy : copies) {
+                    copy.waitForCopyResult();
+                }
+                log.info("Archived {} dumps to {}", copies.size(), storageClass);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PortalException("Interrupted while archiving dumps", e);
+            } finally {
+                transfer.shutdownNow(false);
+            }
+        }
+
+        private static boolean isStandard(String storageClass) {
+            return storageClass == null || StorageClass.Standard.toString().equals(storageClass);
+        }
+    }
+
+    static class Request {
+        private int daily = 7;
+        private int weekly = 4;
+        private int monthly = 12;
+        private int archiveDays;
+        private String storageClass = StorageClass.StandardInfrequentAccess.toString();
+
+        public int getDaily() {
+            return daily;
+        }
+
+        public void setDaily(int daily) {
+            this.daily = daily;
+        }
+
+        public int getWeekly() {
+            return weekly;
+        }
+
+        public void setWeekly(int weekly) {
+            this.weekly = weekly;
+        }
+
+        public int getMonthly() {
+            return monthly;
+        }
+
+        public void setMonthly(int monthly) {
+            this.monthly = monthly;
+        }
+
+        public int getArchiveDays() {
+            return archiveDays;
+        }
+
+        public void setArchiveDays(int archiveDays) {
+            this.archiveDays = archiveDays;
+        }
+
+        public String getStorageClass() {
+            return storageClass;
+        }
+
+        public void setStorageClass(String storageClass) {
+            this.storageClass = storageClass;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Looks up dumps in the catalog by source, database and time range, latest first, without listing the bucket.
+ */
+public class QueryCatalog implements RequestHandler<QueryCatalog.Request, List<CatalogEntry>> {
+
+    @Override
+    public List<CatalogEntry> handleRequest(Request request, Context context) {
+        return MySqlComponent.build().queryCatalog().query(request);
+    }
+
+    @Singleton
+    static class Worker {
+        private final DumpCatalog catalog;
+
+        @Inject
+        Worker(DumpCatalog catalog) {
+            this.catalog = catalog;
+        }
+
+        List<CatalogEntry> query(Request request) {
+            return catalog.entries().stream()
+                    .filter(e -> request.getSource() == null || request.getSource().equals(e.getSource()))
+                    .filter(e -> request.getDatabase() == null
+                            || (e.getDatabases() != null && Arrays.asList(e.getDatabases()).contains(request.getDatabase())))
+                    .filter(e -> request.getStatus() == null || request.getStatus() == e.getStatus())
+                    .filter(e -> e.getStartTime() >= request.getFrom() && e.getStartTime() < request.getTo())
+                    .sorted(Comparator.comparingLong(CatalogEntry::getStartTime).reversed())
+                    .limit(request.getLimit() > 0 ? request.getLimit() : Long.MAX_VALUE)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static class Request {
+        private String source;
+        private String database;
+        private CatalogEntry.Status status = CatalogEntry.Status.succeeded;
+        private long from;
+        private long to = Long.MAX_VALUE;
+        private int limit;
+
+        public String getSource() {
+            return source;
+        }
+
+        public void setSource(String source) {
+            this.source = source;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public void setDatabase(String database) {
+            this.database = database;
+        }
+
+        public CatalogEntry.Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(CatalogEntry.Status status) {
+            this.status = status;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public void setFrom(long from) {
+            this.from = from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public void setTo(long to) {
+            this.to = to;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+    }
+}
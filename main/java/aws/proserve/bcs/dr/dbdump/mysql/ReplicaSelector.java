@@ -0,0 +1,167 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the endpoint to dump from, so that the dump reads from a replica rather than the writer. Every candidate is
+ * probed concurrently for its replication lag and running threads, and the least loaded replica within the lag bound
+ * is picked. A candidate that is not replicating never qualifies. Aurora readers have no replica status, so a read-only
+ * one is probed for its lag in {@code replica_host_status} instead. The configured host is only used if no replica
+ * qualifies.
+ * <p>
+ * A dump reads from one endpoint only, since replicas at different lags are at different points in time.
+ */
+@Singleton
+class ReplicaSelector {
+    private static final int PROBE_TIMEOUT_SECONDS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final GetDatabases.Worker getDatabases;
+    private final ExecutorService executor;
+
+    @Inject
+    ReplicaSelector(GetDatabases.Worker getDatabases,
+                    ExecutorService executor) {
+        this.getDatabases = getDatabases;
+        this.executor = executor;
+    }
+
+    DbParameter select(DbParameter parameter) {
+        if (parameter.getReplicas() == null || parameter.getReplicas().length == 0) {
+            return parameter;
+        }
+
+        final var futures = new ArrayList<CompletableFuture<Health>>();
+        for (var replica : parameter.getReplicas()) {
+            final var separator = replica.lastIndexOf(':');
+            final var endpoint = separator < 0
+                    ? parameter.withEndpoint(replica, parameter.getPort())
+                    : parameter.withEndpoint(replica.substring(0, separator),
+                    Integer.parseInt(replica.substring(separator + 1)));
+            futures.add(CompletableFuture.supplyAsync(() -> probe(endpoint), executor)
+                    .completeOnTimeout(new Health(endpoint, "timed out"), PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        return futures.stream()
+                .map(CompletableFuture::join)
+                .peek(h -> log.info("Replica {}:{} {}", h.endpoint.getHost(), h.endpoint.getPort(), h))
+                .filter(h -> h.error == null && h.lag <= parameter.getMaxReplicaLagSeconds())
+                .min(Comparator.comparingLong((Health h) -> h.threadsRunning).thenComparingLong(h -> h.lag))
+                .map(h -> h.endpoint)
+                .orElseGet(() -> {
+                    log.warn("No replica is within {} seconds of lag, dump from {}",
+                            parameter.getMaxReplicaLagSeconds(), parameter.getHost());
+                    return parameter;
+                });
+    }
+
+    private Health probe(DbParameter endpoint) {
+        try (final var connection = getDatabases.connect(endpoint, PROBE_TIMEOUT_SECONDS)) {
+            final var lag = lagOf(connection);
+            if (lag == null) {
+                return new Health(endpoint, "not a replica");
+            }
+            return new Health(endpoint, lag, threadsRunningOf(connection));
+        } catch (ClassNotFoundException | SQLException e) {
+            log.warn("Unable to probe replica " + endpoint.getConnectionString(), e);
+            return new Health(endpoint, e.getMessage());
+        }
+    }
+
+    /**
+     * @return seconds behind the source, {@code null} if it is not a replica, or {@link Long#MAX_VALUE} if replication
+     * is broken.
+     */
+    private Long lagOf(Connection connection) throws SQLException {
+        Long lag;
+        try {
+            lag = lagOf(connection, "show replica status", "Seconds_Behind_Source");
+        } catch (SQLException e) {
+            lag = lagOf(connection, "show slave status", "Seconds_Behind_Master"); // before MySQL 8.0.22
+        }
+        return lag != null || !isReadOnly(connection) ? lag : auroraLagOf(connection);
+    }
+
+    private boolean isReadOnly(Connection connection) throws SQLException {
+        try (final var statement = connection.createStatement();
+             final var rs = statement.executeQuery("select @@innodb_read_only or @@read_only")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * @return seconds behind the writer rounded up, or {@code null} if it is not an Aurora reader.
+     */
+    private Long auroraLagOf(Connection connection) {
+        try (final var statement = connection.createStatement();
+             final var rs = statement.executeQuery("select REPLICA_LAG_IN_MILLISECONDS"
+                     + " from information_schema.replica_host_status where SERVER_ID = @@aurora_server_id")) {
+            if (!rs.next()) {
+                return null;
+            }
+            final var millis = rs.getDouble(1);
+            return rs.wasNull() ? Long.MAX_VALUE : (long) Math.ceil(millis / 1000);
+        } catch (SQLException e) {
+            return null; // not Aurora, which has neither the table nor the variable.
+        }
+    }
+
+    private Long lagOf(Connection connection, String query, String column) throws SQLException {
+        try (final var statement = connection.createStatement();
+             final var rs = statement.executeQuery(query)) {
+            if (!rs.next()) {
+                return null;
+            }
+            final var lag = rs.getLong(column);
+            return rs.wasNull() ? Long.MAX_VALUE : lag;
+        }
+    }
+
+    private long threadsRunningOf(Connection connection) throws SQLException {
+        try (final var statement = connection.createStatement();
+             final var rs = statement.executeQuery("show global status like 'Threads_running'")) {
+            return rs.next() ? rs.getLong(2) : 0;
+        }
+    }
+
+    private static class Health {
+        final DbParameter endpoint;
+        final long lag;
+        final long threadsRunning;
+        final String error;
+
+        Health(DbParameter endpoint, long lag, long threadsRunning) {
+            this.endpoint = endpoint;
+            this.lag = lag;
+            this.threadsRunning = threadsRunning;
+            this.error = null;
+        }
+
+        Health(DbParameter endpoint, String error) {
+            this.endpoint = endpoint;
+            this.lag = Long.MAX_VALUE;
+            this.threadsRunning = Long.MAX_VALUE;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return error != null ? "is unhealthy: " + error : "has lag " + lag + " s, " + threadsRunning + " threads running";
+        }
+    }
+}
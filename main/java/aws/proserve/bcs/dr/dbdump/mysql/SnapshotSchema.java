@@ -0,0 +1,446 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.dbdump.DbDumpConstants;
+import aws.proserve.bcs.dr.exception.PortalException;
+import aws.proserve.bcs.dr.lambda.StringHandler;
+import aws.proserve.bcs.dr.lambda.annotation.Default;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Takes a schema-only snapshot of tables, views, routines, triggers and events, and compares it with the previous
+ * snapshot of the same source. Objects are hashed from bulk queries of {@code information_schema}, so that only the
+ * changed objects need a {@code SHOW CREATE} round trip. The output is the S3 key of the diff.
+ * <p>
+ * A source has one snapshot for all its databases. Only the requested databases are compared and replaced in it, so
+ * that a run over other databases does not report them as removed.
+ */
+public class SnapshotSchema implements StringHandler<DbParameter> {
+    private static final String TABLE = "table";
+    private static final String VIEW = "view";
+    private static final String PROCEDURE = "procedure";
+    private static final String FUNCTION = "function";
+    private static final String TRIGGER = "trigger";
+    private static final String EVENT = "event";
+
+    /**
+     * Every query selects the object type and name first, and is ordered so that the hash is stable.
+     */
+    private static final String[] QUERIES = {
+            "select if(TABLE_TYPE = 'VIEW', 'view', 'table'), TABLE_NAME, TABLE_TYPE, ENGINE, TABLE_COLLATION,"
+                    + " CREATE_OPTIONS, TABLE_COMMENT from information_schema.TABLES"
+                    + " where TABLE_SCHEMA = ? order by TABLE_NAME",
+            "select 'table', TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA,"
+                    + " CHARACTER_SET_NAME, COLLATION_NAME, COLUMN_COMMENT from information_schema.COLUMNS"
+                    + " where TABLE_SCHEMA = ? order by TABLE_NAME, ORDINAL_POSITION",
+            "select 'table', TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, NON_UNIQUE, INDEX_TYPE, SUB_PART"
+                    + " from information_schema.STATISTICS"
+                    + " where TABLE_SCHEMA = ? order by TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX",
+            "select 'table', TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME, REFERENCED_TABLE_SCHEMA, REFERENCED_TABLE_NAME,"
+                    + " REFERENCED_COLUMN_NAME from information_schema.KEY_COLUMN_USAGE"
+                    + " where TABLE_SCHEMA = ? and REFERENCED_TABLE_NAME is not null"
+                    + " order by TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION",
+            "select 'table', TABLE_NAME, CONSTRAINT_NAME, UNIQUE_CONSTRAINT_NAME, MATCH_OPTION, UPDATE_RULE,"
+                    + " DELETE_RULE from information_schema.REFERENTIAL_CONSTRAINTS"
+                    + " where CONSTRAINT_SCHEMA = ? order by TABLE_NAME, CONSTRAINT_NAME",
+            "select 'table', TABLE_NAME, PARTITION_NAME, SUBPARTITION_NAME, PARTITION_METHOD, SUBPARTITION_METHOD,"
+                    + " PARTITION_EXPRESSION, SUBPARTITION_EXPRESSION, PARTITION_DESCRIPTION"
+                    + " from information_schema.PARTITIONS where TABLE_SCHEMA = ? and PARTITION_NAME is not null"
+                    + " order by TABLE_NAME, PARTITION_ORDINAL_POSITION, SUBPARTITION_ORDINAL_POSITION",
+            "select 'view', TABLE_NAME, VIEW_DEFINITION, CHECK_OPTION, DEFINER, SECURITY_TYPE"
+                    + " from information_schema.VIEWS where TABLE_SCHEMA = ? order by TABLE_NAME",
+            "select lower(ROUTINE_TYPE), ROUTINE_NAME, DTD_IDENTIFIER, ROUTINE_DEFINITION, IS_DETERMINISTIC,"
+                    + " SQL_DATA_ACCESS, SECURITY_TYPE, SQL_MODE, ROUTINE_COMMENT, DEFINER"
+                    + " from information_schema.ROUTINES where ROUTINE_SCHEMA = ? order by ROUTINE_NAME",
+            "select lower(ROUTINE_TYPE), SPECIFIC_NAME, PARAMETER_NAME, PARAMETER_MODE, DTD_IDENTIFIER"
+                    + " from information_schema.PARAMETERS where SPECIFIC_SCHEMA = ? and ROUTINE_TYPE is not null"
+                    + " order by SPECIFIC_NAME, ORDINAL_POSITION",
+            "select 'trigger', TRIGGER_NAME, EVENT_MANIPULATION, EVENT_OBJECT_TABLE, ACTION_TIMING, ACTION_ORDER,"
+                    + " ACTION_STATEMENT, SQL_MODE, DEFINER from information_schema.TRIGGERS"
+                    + " where TRIGGER_SCHEMA = ? order by TRIGGER_NAME",
+            "select 'event', EVENT_NAME, EVENT_DEFINITION, EVENT_TYPE, EXECUTE_AT, INTERVAL_VALUE, INTERVAL_FIELD,"
+                    + " STARTS, ENDS, ON_COMPLETION, STATUS, SQL_MODE, DEFINER from information_schema.EVENTS"
+                    + " where EVENT_SCHEMA = ? order by EVENT_NAME",
+    };
+
+    /**
+     * Queries of {@code information_schema} that older versions lack, which are skipped there: generated columns
+     * since MySQL 5.7, and check constraints since 8.0.16.
+     */
+    private static final String[] OPTIONAL_QUERIES = {
+            "select 'table', TABLE_NAME, COLUMN_NAME, GENERATION_EXPRESSION from information_schema.COLUMNS"
+                    + " where TABLE_SCHEMA = ? and GENERATION_EXPRESSION <> '' order by TABLE_NAME, ORDINAL_POSITION",
+            "select 'table', t.TABLE_NAME, t.CONSTRAINT_NAME, c.CHECK_CLAUSE, t.ENFORCED"
+                    + " from information_schema.TABLE_CONSTRAINTS t join information_schema.CHECK_CONSTRAINTS c"
+                    + " on c.CONSTRAINT_SCHEMA = t.CONSTRAINT_SCHEMA and c.CONSTRAINT_NAME = t.CONSTRAINT_NAME"
+                    + " where t.CONSTRAINT_SCHEMA = ? and t.CONSTRAINT_TYPE = 'CHECK'"
+                    + " order by t.TABLE_NAME, t.CONSTRAINT_NAME",
+    };
+    private static final int ER_BAD_FIELD_ERROR = 1054;
+    private static final int ER_UNKNOWN_TABLE = 1109;
+
+    @Override
+    public String handleRequest(DbParameter parameter, Context context) {
+        return MySqlComponent.build().snapshotSchema().snapshot(parameter);
+    }
+
+    @Singleton
+    static class Worker extends BaseWorker {
+        private final Logger log = LoggerFactory.getLogger(getClass());
+
+        private final AmazonS3 s3;
+        private final AWSSimpleSystemsManagement ssm;
+        private final ObjectMapper mapper;
+        private final GetDatabases.Worker getDatabases;
+
+        @Inject
+        Worker(@Default AmazonS3 s3,
+               @Default AWSSimpleSystemsManagement ssm,
+               ObjectMapper mapper,
+               GetDatabases.Worker getDatabases) {
+            this.s3 = s3;
+            this.ssm = ssm;
+            this.mapper = mapper;
+            this.getDatabases = getDatabases;
+        }
+
+        String snapshot(DbParameter parameter) {
+            log.info("Snapshot schema of databases: {}", String.join(", ", parameter.getDatabases()));
+
+            final var bucket = getBucket(ssm);
+            final var prefix = DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/schema/"
+                    + parameter.getHost() + "-" + parameter.getPort() + "/";
+            final var snapshotKey = prefix + "snapshot.json";
+            final var current = hashObjects(parameter);
+            final var requested = new HashSet<>(Arrays.asList(parameter.getDatabases()));
+            final var snapshot = s3.doesObjectExist(bucket, snapshotKey)
+                    ? read(bucket, snapshotKey) : new TreeMap<String, String>();
+            final var previous = new HashMap<String, String>();
+            snapshot.forEach((object, hash) -> {
+                if (requested.contains(databaseOf(object))) {
+                    previous.put(object, hash);
+                }
+            });
+
+            // a database without previous objects is its own baseline, whatever the other databases have.
+            final var known = new HashSet<String>();
+            previous.keySet().forEach(object -> known.add(databaseOf(object)));
+            final var diff = new Diff();
+            diff.setTime(Instant.now().toString());
+            diff.setObjects(current.size());
+            diff.setBaseline(known.isEmpty());
+            requested.stream().filter(d -> !known.contains(d)).sorted().forEach(diff.getBaselines()::add);
+            if (!known.isEmpty()) {
+                final var added = new ArrayList<String>();
+                final var changed = new ArrayList<String>();
+                current.forEach((object, hash) -> {
+                    if (!known.contains(databaseOf(object))) {
+                        return;
+                    }
+
+                    final var old = previous.get(object);
+                    if (old == null) {
+                        added.add(object);
+                    } else if (!old.equals(hash)) {
+                        changed.add(object);
+                    }
+                });
+                diff.setAdded(showCreate(parameter, added));
+                diff.setChanged(showCreate(parameter, changed));
+                previous.keySet().stream().filter(o -> !current.containsKey(o)).sorted().forEach(diff.getRemoved()::add);
+            }
+
+            previous.keySet().forEach(snapshot::remove);
+            snapshot.putAll(current);
+
+            final var diffKey = prefix + "diff-" + diff.getTime() + ".json";
+            try {
+                s3.putObject(bucket, diffKey, mapper.writeValueAsString(diff));
+                s3.putObject(bucket, snapshotKey, mapper.writeValueAsString(snapshot));
+            } catch (IOException e) {
+                log.warn("Unable to write schema snapshot", e);
+                throw new PortalException("Unable to write schema snapshot", e);
+            }
+
+            log.info("Snapshot {} objects: {} added, {} changed, {} removed, to {}", current.size(),
+                    diff.getAdded().size(), diff.getChanged().size(), diff.getRemoved().size(), diffKey);
+            return diffKey;
+        }
+
+        private Map<String, String> read(String bucket, String key) {
+            try (final var stream = s3.getObject(bucket, key).getObjectContent()) {
+                return mapper.readValue(stream, new TypeReference<TreeMap<String, String>>() {
+                });
+            } catch (IOException e) {
+                log.warn("Unable to read schema snapshot " + key, e);
+                throw new PortalException("Unable to read schema snapshot " + key, e);
+            }
+        }
+
+        private static String databaseOf(String object) {
+            return object.substring(0, object.indexOf('/'));
+        }
+
+        /**
+         * @return object of the form {@code database/type/name} to its hash, sorted by the object.
+         */
+        private Map<String, String> hashObjects(DbParameter parameter) {
+            final var databases = parameter.getDatabases();
+            final var executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(databases.length, Runtime.getRuntime().availableProcessors() * 2)));
+            try {
+                final var futures = new ArrayList<CompletableFuture<Map<String, String>>>();
+                for (var database : databases) {
+                    futures.add(CompletableFuture.supplyAsync(() -> hashObjects(parameter, database), executor));
+                }
+
+                final var objects = new TreeMap<String, String>();
+                futures.forEach(f -> objects.putAll(f.join()));
+                return objects;
+            } catch (CompletionException e) {
+                log.warn("Unable to snapshot schema", e.getCause());
+                throw new PortalException("Unable to snapshot schema", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private Map<String, String> hashObjects(DbParameter parameter, String database) {
+            final var digests = new HashMap<String, MessageDigest>();
+            final var views = new HashSet<String>();
+            try (final var connection = getDatabases.connect(parameter)) {
+                for (var query : QUERIES) {
+                    hash(connection, query, database, digests, views);
+                }
+                for (var query : OPTIONAL_QUERIES) {
+                    try {
+                        hash(connection, query, database, digests, views);
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() != ER_BAD_FIELD_ERROR && e.getErrorCode() != ER_UNKNOWN_TABLE) {
+                            throw e;
+                        }
+                        log.debug("Skip query unsupported by the source: {}", e.getMessage());
+                    }
+                }
+            } catch (ClassNotFoundException | SQLException e) {
+                throw new PortalException("Unable to snapshot schema of " + database, e);
+            }
+
+            final var hashes = new HashMap<String, String>();
+            digests.forEach((object, digest) -> hashes.put(object, toHex(digest.digest())));
+            return hashes;
+        }
+
+        /**
+         * Adds the rows to the digests of their objects. The columns of views are skipped rather than filtered by a
+         * join, which is slow on MySQL 5.7, so the query of tables has to come first.
+         */
+        private static void hash(Connection connection, String query, String database,
+                                 Map<String, MessageDigest> digests, Set<String> views) throws SQLException {
+            try (final var statement = connection.prepareStatement(query)) {
+                statement.setString(1, database);
+                try (final var rs = statement.executeQuery()) {
+                    final var columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        final var type = rs.getString(1);
+                        final var name = rs.getString(2);
+                        if (VIEW.equals(type)) {
+                            views.add(name);
+                        } else if (TABLE.equals(type) && views.contains(name)) {
+                            continue;
+                        }
+
+                        final var digest = digests.computeIfAbsent(database + "/" + type + "/" + name, k -> sha256());
+                        for (int i = 3; i <= columns; i++) {
+                            final var value = rs.getString(i);
+                            digest.update(value == null ? new byte[]{0} : value.getBytes(StandardCharsets.UTF_8));
+                            digest.update((byte) '\t');
+                        }
+                        digest.update((byte) '\n');
+                    }
+                }
+            }
+        }
+
+        private List<Change> showCreate(DbParameter parameter, List<String> objects) {
+            final var changes = new ArrayList<Change>();
+            if (objects.isEmpty()) {
+                return changes;
+            }
+
+            try (final Connection connection = getDatabases.connect(parameter);
+                 final var statement = connection.createStatement()) {
+                for (var object : objects) {
+                    final var parts = object.split("/", 3);
+                    final var name = quote(parts[0]) + "." + quote(parts[2]);
+                    final var change = new Change();
+                    change.setObject(object);
+                    try (final var rs = statement.executeQuery("show create " + parts[1] + " " + name)) {
+                        if (rs.next()) {
+                            change.setDdl(rs.getString(ddlColumn(parts[1])));
+                        }
+                    }
+                    changes.add(change);
+                }
+            } catch (ClassNotFoundException | SQLException e) {
+                throw new PortalException("Unable to show create of changed objects", e);
+            }
+            return changes;
+        }
+
+        private static int ddlColumn(String type) {
+            switch (type) {
+                case TABLE:
+                case VIEW:
+                    return 2;
+                case PROCEDURE:
+                case FUNCTION:
+                case TRIGGER:
+                    return 3;
+                case EVENT:
+                    return 4;
+                default:
+                    throw new IllegalArgumentException("Unknown object type " + type);
+            }
+        }
+
+        private static String quote(String identifier) {
+            return '`' + identifier.replace("`", "``") + '`';
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String toHex(byte[] bytes) {
+            final var builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        }
+    }
+
+    static class Diff {
+        private String time;
+        private int objects;
+        private boolean baseline;
+        private List<String> baselines = new ArrayList<>();
+        private List<Change> added = new ArrayList<>();
+        private List<Change> changed = new ArrayList<>();
+        private List<String> removed = new ArrayList<>();
+
+        public String getTime() {
+            return time;
+        }
+
+        public void setTime(String time) {
+            this.time = time;
+        }
+
+        public int getObjects() {
+            return objects;
+        }
+
+        public void setObjects(int objects) {
+            this.objects = objects;
+        }
+
+        public boolean isBaseline() {
+            return baseline;
+        }
+
+        public void setBaseline(boolean baseline) {
+            this.baseline = baseline;
+        }
+
+        /**
+         * @apiNote databases snapshot for the first time, whose objects are not reported as added.
+         */
+        public List<String> getBaselines() {
+            return baselines;
+        }
+
+        public void setBaselines(List<String> baselines) {
+            this.baselines = baselines;
+        }
+
+        public List<Change> getAdded() {
+            return added;
+        }
+
+        public void setAdded(List<Change> added) {
+            this.added = added;
+        }
+
+        public List<Change> getChanged() {
+            return changed;
+        }
+
+        public void setChanged(List<Change> changed) {
+            this.changed = changed;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public void setRemoved(List<String> removed) {
+            this.removed = removed;
+        }
+    }
+
+    static class Change {
+        private String object;
+        private String ddl;
+
+        public String getObject() {
+            return object;
+        }
+
+        public void setObject(String object) {
+            this.object = object;
+        }
+
+        public String getDdl() {
+            return ddl;
+        }
+
+        public void setDdl(String ddl) {
+            this.ddl = ddl;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.exception.PortalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports tables in parallel as tab-separated files, in the default format of {@code LOAD DATA}: fields terminated by
+ * tab, lines terminated by newline, special characters escaped by backslash and {@code NULL} written as {@code \N}.
+ * <p>
+ * All tables are read at one point in time, as {@code mysqldump --single-transaction} does. Every worker connection
+ * starts a consistent-snapshot transaction while another connection briefly holds {@code FLUSH TABLES WITH READ LOCK}.
+ * If the lock cannot be taken, for example without the {@code RELOAD} privilege on RDS, all tables are read on a
+ * single connection instead.
+ */
+@Singleton
+class TableExporter {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int LOCK_WAIT_TIMEOUT_SECONDS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final GetDatabases.Worker getDatabases;
+
+    @Inject
+    TableExporter(GetDatabases.Worker getDatabases) {
+        this.getDatabases = getDatabases;
+    }
+
+    void export(DbParameter endpoint, File folder) {
+        final var tables = new ConcurrentLinkedQueue<>(getTables(endpoint));
+        final var count = tables.size();
+        final var connections = new ArrayList<Connection>();
+        ExecutorService executor = null;
+        try {
+            final var threads = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors() * 2));
+            for (int i = 0; i < threads; i++) {
+                connections.add(getDatabases.connect(endpoint));
+            }
+            if (!startConsistentSnapshot(endpoint, connections)) {
+                while (connections.size() > 1) {
+                    connections.remove(connections.size() - 1).close();
+                }
+                startTransaction(connections.get(0));
+            }
+
+            executor = Executors.newFixedThreadPool(connections.size());
+            final var futures = new ArrayList<Future<?>>();
+            for (var connection : connections) {
+                futures.add(executor.submit(() -> {
+                    Table table;
+                    while ((table = tables.poll()) != null) {
+                        exportTable(connection, table, folder);
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+            log.info("Exported {} tables on {} connections to {}", count, connections.size(), folder);
+        } catch (ClassNotFoundException | SQLException e) {
+            log.warn("Unable to export tables", e);
+            throw new PortalException("Unable to export tables", e);
+        } catch (ExecutionException e) {
+            log.warn("Unable to export tables", e.getCause());
+            throw new PortalException("Unable to export tables", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PortalException("Interrupted while exporting tables", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (var connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("Unable to close connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a consistent-snapshot transaction on every connection while the global read lock is held, so that they
+     * all see the same point in time.
+     *
+     * @return {@code false} if the lock cannot be taken.
+     */
+    private boolean startConsistentSnapshot(DbParameter endpoint, List<Connection> connections)
+            throws ClassNotFoundException, SQLException {
+        if (connections.size() == 1) {
+            startTransaction(connections.get(0));
+            return true;
+        }
+
+        try (final var lock = getDatabases.connect(endpoint);
+             final var statement = lock.createStatement()) {
+            try {
+                // the lock waits for running statements and blocks writes meanwhile, so do not wait long.
+                statement.execute("set session lock_wait_timeout = " + LOCK_WAIT_TIMEOUT_SECONDS);
+                statement.execute("flush tables with read lock");
+            } catch (SQLException e) {
+                log.info("Unable to lock tables, export on a single connection: {}", e.getMessage());
+                return false;
+            }
+
+            try {
+                for (var connection : connections) {
+                    startTransaction(connection);
+                }
+            } finally {
+                statement.execute("unlock tables");
+            }
+            return true;
+        }
+    }
+
+    private static void startTransaction(Connection connection) throws SQLException {
+        try (final var statement = connection.createStatement()) {
+            statement.execute("set session transaction isolation level repeatable read");
+            statement.execute("start transaction with consistent snapshot");
+        }
+    }
+
+    /**
+     * @return the base tables with the columns to export, which leave out generated columns since {@code LOAD DATA}
+     * cannot set them.
+     */
+    private List<Table> getTables(DbParameter parameter) {
+        try (final var connection = getDatabases.connect(parameter);
+             final var tablesStatement = connection.prepareStatement("select TABLE_NAME from information_schema.TABLES"
+                     + " where TABLE_SCHEMA = ? and TABLE_TYPE = 'BASE TABLE'");
+             final var columnsStatement = connection.prepareStatement("select TABLE_NAME, COLUMN_NAME"
+                     + " from information_schema.COLUMNS where TABLE_SCHEMA = ?"
+                     + " and EXTRA not like '%VIRTUAL GENERATED%' and EXTRA not like '%STORED GENERATED%'"
+                     + " order by TABLE_NAME, ORDINAL_POSITION")) {
+            final var tables = new ArrayList<Table>();
+            for (var database : parameter.getDatabases()) {
+                final var byName = new HashMap<String, Table>();
+                tablesStatement.setString(1, database);
+                try (final var rs = tablesStatement.executeQuery()) {
+                    while (rs.next()) {
+                        final var table = new Table(database, rs.getString(1));
+                        byName.put(table.name, table);
+                        tables.add(table);
+                    }
+                }
+
+                // columns of views are skipped here rather than joined, which is slow on MySQL 5.7.
+                columnsStatement.setString(1, database);
+                try (final var rs = columnsStatement.executeQuery()) {
+                    while (rs.next()) {
+                        final var table = byName.get(rs.getString(1));
+                        if (table != null) {
+                            table.columns.add(quote(rs.getString(2)));
+                        }
+                    }
+                }
+            }
+            return tables;
+        } catch (ClassNotFoundException | SQLException e) {
+            log.warn("Unable to get tables: " + parameter.getConnectionString(), e);
+            throw new PortalException("Unable to get tables", e);
+        }
+    }
+
+    /**
+     * Writes the rows to {@code <table>.txt}, and the columns they hold to {@code <table>.columns} for the column list
+     * of {@code LOAD DATA}, or {@code mysqlimport --columns}.
+     */
+    private void exportTable(Connection connection, Table table, File folder) throws SQLException, IOException {
+        final var dir = new File(folder, table.database);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create folder " + dir);
+        }
+        if (table.columns.isEmpty()) {
+            log.warn("Skip {}.{} with only generated columns", table.database, table.name);
+            return;
+        }
+
+        final var columns = String.join(",", table.columns);
+        Files.writeString(new File(dir, table.name + ".columns").toPath(), columns + "\n");
+        try (final var statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             final var out = new BufferedOutputStream(new FileOutputStream(new File(dir, table.name + ".txt")), BUFFER_SIZE)) {
+            statement.setFetchSize(Integer.MIN_VALUE); // streams rows instead of loading the whole table.
+            try (final var rs = statement.executeQuery(
+                    "select " + columns + " from " + quote(table.database) + "." + quote(table.name))) {
+                final var count = table.columns.size();
+                long rows = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= count; i++) {
+                        if (i > 1) {
+                            out.write('\t');
+                        }
+                        writeField(out, rs.getBytes(i));
+                    }
+                    out.write('\n');
+                    rows++;
+                }
+                log.debug("Exported {} rows of {}.{}", rows, table.database, table.name);
+            }
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '`' + identifier.replace("`", "``") + '`';
+    }
+
+    private static void writeField(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write('\\');
+            out.write('N');
+            return;
+        }
+
+        for (byte b : value) {
+            switch (b) {
+                case '\\':
+                    out.write('\\');
+                    out.write('\\');
+                    break;
+                case '\t':
+                    out.write('\\');
+                    out.write('t');
+                    break;
+                case '\n':
+                    out.write('\\');
+                    out.write('n');
+                    break;
+                case '\r':
+                    out.write('\\');
+                    out.write('r');
+                    break;
+                case 0:
+                    out.write('\\');
+                    out.write('0');
+                    break;
+                default:
+                    out.write(b);
+            }
+        }
+    }
+
+    private static class Table {
+        final String database;
+        final String name;
+        final List<String> columns = new ArrayList<>();
+
+        Table(String database, String name) {
+            this.database = database;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed set of direct buffers bounded by a memory ceiling. {@link #acquire()} blocks while all buffers are in use,
+ * which is how a slow stage pushes back on the stages before it.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    public BufferPool(int bufferSize, long memoryLimit) {
+        final var count = (int) Math.min(Integer.MAX_VALUE, memoryLimit / bufferSize);
+        if (count < 2) {
+            throw new IllegalArgumentException("Memory limit " + memoryLimit + " is less than two buffers of " + bufferSize);
+        }
+
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapacity() {
+        return buffers.remainingCapacity() + buffers.size();
+    }
+
+    public ByteBuffer acquire() throws InterruptedException {
+        return buffers.take();
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffers.add(buffer.clear());
+    }
+}
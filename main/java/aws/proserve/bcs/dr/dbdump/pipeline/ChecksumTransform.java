@@ -0,0 +1,47 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Passes buffers through untouched while digesting them.
+ */
+public class ChecksumTransform implements Transform {
+    private final MessageDigest digest;
+    private String hex;
+
+    public ChecksumTransform(String algorithm) {
+        try {
+            this.digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public void apply(ByteBuffer buffer, Emitter emitter) throws InterruptedException {
+        digest.update(buffer.duplicate());
+        emitter.emit(buffer);
+    }
+
+    @Override
+    public void finish(Emitter emitter) {
+        final var bytes = digest.digest();
+        final var builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        hex = builder.toString();
+    }
+
+    /**
+     * @return the hex digest, available once the pipeline completes.
+     */
+    public String getHex() {
+        return hex;
+    }
+}
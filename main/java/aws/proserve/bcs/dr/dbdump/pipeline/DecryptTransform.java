@@ -0,0 +1,89 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decrypts a stream written by {@link EncryptTransform}. A segment is held back until more input arrives, since only
+ * the end of the stream tells which segment is the last.
+ */
+public class DecryptTransform implements Transform {
+    private final KeyProvider keyProvider;
+    private ByteBuffer header = ByteBuffer.allocate(SegmentedAesGcm.FIXED_HEADER_SIZE);
+    private SegmentedAesGcm cipher;
+    private ByteBuffer ciphertext;
+    private long index;
+
+    public DecryptTransform(KeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+    }
+
+    /**
+     * @return the ciphertext being filled and the plaintext it decrypts into.
+     */
+    @Override
+    public int getReservedBuffers() {
+        return 2;
+    }
+
+    @Override
+    public void apply(ByteBuffer buffer, Emitter emitter) throws IOException, InterruptedException {
+        while (buffer.hasRemaining()) {
+            if (cipher == null) {
+                readHeader(buffer);
+                continue;
+            }
+
+            if (ciphertext == null) {
+                ciphertext = emitter.acquire();
+                if (ciphertext.capacity() < cipher.getSegmentSize() + SegmentedAesGcm.TAG_SIZE) {
+                    throw new IOException("Buffer size is smaller than segment size " + cipher.getSegmentSize());
+                }
+                ciphertext.limit(cipher.getSegmentSize() + SegmentedAesGcm.TAG_SIZE);
+            } else if (!ciphertext.hasRemaining()) {
+                decrypt(emitter, false);
+                continue;
+            }
+
+            final var n = Math.min(buffer.remaining(), ciphertext.remaining());
+            ciphertext.put(buffer.slice().limit(n));
+            buffer.position(buffer.position() + n);
+        }
+        emitter.release(buffer);
+    }
+
+    @Override
+    public void finish(Emitter emitter) throws IOException, InterruptedException {
+        if (ciphertext == null) {
+            throw new IOException("Encrypted stream is truncated");
+        }
+        decrypt(emitter, true);
+    }
+
+    private void readHeader(ByteBuffer buffer) throws IOException {
+        final var n = Math.min(buffer.remaining(), header.remaining());
+        header.put(buffer.slice().limit(n));
+        buffer.position(buffer.position() + n);
+        if (header.hasRemaining()) {
+            return;
+        }
+
+        final var size = SegmentedAesGcm.headerSizeOf(header.duplicate().flip());
+        if (header.capacity() < size) {
+            header = ByteBuffer.allocate(size).put(header.flip());
+        } else {
+            cipher = SegmentedAesGcm.open(header.flip(), keyProvider);
+        }
+    }
+
+    private void decrypt(Emitter emitter, boolean last) throws IOException, InterruptedException {
+        final var plaintext = emitter.acquire();
+        cipher.decrypt(index++, last, ciphertext.flip(), plaintext);
+        emitter.release(ciphertext);
+        ciphertext = null;
+        emitter.emit(plaintext.flip());
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Encrypts the stream into {@link SegmentedAesGcm} segments, a batch of {@code parallelism} segments at a time. A batch
+ * holds two buffers per segment, which {@link #getReservedBuffers()} reports to the pipeline.
+ */
+public class EncryptTransform implements Transform {
+    private final SegmentedAesGcm cipher;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final List<ByteBuffer> batch = new ArrayList<>();
+    private ByteBuffer plaintext;
+    private long index;
+    private boolean started;
+
+    /**
+     * @param bufferSize the buffer size of the pool, of which a segment takes all but the tag.
+     */
+    public EncryptTransform(KeyProvider keyProvider, int bufferSize, int parallelism) {
+        final var key = keyProvider.generateDataKey();
+        this.cipher = new SegmentedAesGcm(key.getPlaintext(), key.getWrapped(), bufferSize - SegmentedAesGcm.TAG_SIZE);
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = this.parallelism == 1 ? null
+                : Executors.newFixedThreadPool(this.parallelism, Pipeline.daemon("encrypt"));
+    }
+
+    /**
+     * @return the plaintext and ciphertext of a batch, and the segment being filled.
+     */
+    @Override
+    public int getReservedBuffers() {
+        return reservedBuffersOf(parallelism);
+    }
+
+    public static int reservedBuffersOf(int parallelism) {
+        return 2 * parallelism + 1;
+    }
+
+    @Override
+    public void apply(ByteBuffer buffer, Emitter emitter) throws IOException, InterruptedException {
+        start(emitter);
+        while (buffer.hasRemaining()) {
+            if (plaintext == null) {
+                plaintext = emitter.acquire();
+                plaintext.limit(cipher.getSegmentSize());
+            }
+
+            final var n = Math.min(buffer.remaining(), plaintext.remaining());
+            plaintext.put(buffer.slice().limit(n));
+            buffer.position(buffer.position() + n);
+            if (!plaintext.hasRemaining()) {
+                batch.add(plaintext);
+                plaintext = null;
+                if (batch.size() == parallelism) {
+                    flush(emitter, false);
+                }
+            }
+        }
+        emitter.release(buffer);
+    }
+
+    @Override
+    public void finish(Emitter emitter) throws IOException, InterruptedException {
+        try {
+            start(emitter);
+            // the last segment is always flagged, even if empty, so that truncation is detected.
+            batch.add(plaintext == null ? emitter.acquire().limit(0) : plaintext);
+            plaintext = null;
+            flush(emitter, true);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void start(Emitter emitter) throws InterruptedException {
+        if (!started) {
+            started = true;
+            emitter.emit(emitter.acquire().put(cipher.getHeader()).flip());
+        }
+    }
+
+    private void flush(Emitter emitter, boolean last) throws IOException, InterruptedException {
+        final var outputs = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < batch.size(); i++) {
+            outputs.add(emitter.acquire());
+        }
+
+        if (executor == null) {
+            for (int i = 0; i < batch.size(); i++) {
+                cipher.encrypt(index + i, last && i == batch.size() - 1, batch.get(i).flip(), outputs.get(i));
+            }
+        } else {
+            final var futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < batch.size(); i++) {
+                final var segment = i;
+                futures.add(executor.submit(() -> {
+                    cipher.encrypt(index + segment, last && segment == batch.size() - 1,
+                            batch.get(segment).flip(), outputs.get(segment));
+                    return null;
+                }));
+            }
+            try {
+                for (var future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to encrypt", e.getCause());
+            }
+        }
+
+        index += batch.size();
+        batch.forEach(emitter::release);
+        batch.clear();
+        for (var output : outputs) {
+            emitter.emit(output.flip());
+        }
+    }
+}
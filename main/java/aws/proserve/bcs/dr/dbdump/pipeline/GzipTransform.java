@@ -0,0 +1,81 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the stream into the gzip format, deflating straight between pooled buffers.
+ */
+public class GzipTransform implements Transform {
+    public static final int RESERVED_BUFFERS = 1;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_SIZE = 8;
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer output;
+
+    public GzipTransform(int level) {
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * @return the output buffer being filled.
+     */
+    @Override
+    public int getReservedBuffers() {
+        return RESERVED_BUFFERS;
+    }
+
+    @Override
+    public void apply(ByteBuffer buffer, Emitter emitter) throws InterruptedException {
+        if (output == null) {
+            output = emitter.acquire().put(HEADER);
+        }
+
+        crc.update(buffer.duplicate());
+        deflater.setInput(buffer);
+        while (!deflater.needsInput()) {
+            deflate(emitter);
+        }
+        deflater.setInput(NO_INPUT); // drops the reference before the buffer goes back to the pool.
+        emitter.release(buffer);
+    }
+
+    @Override
+    public void finish(Emitter emitter) throws InterruptedException {
+        if (output == null) {
+            output = emitter.acquire().put(HEADER);
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(emitter);
+        }
+        if (output.remaining() < TRAILER_SIZE) {
+            emitter.emit(output.flip());
+            output = emitter.acquire();
+        }
+        output.order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) crc.getValue())
+                .putInt((int) deflater.getBytesRead())
+                .order(ByteOrder.BIG_ENDIAN);
+        emitter.emit(output.flip());
+        output = null;
+        deflater.end();
+    }
+
+    private void deflate(Emitter emitter) throws InterruptedException {
+        deflater.deflate(output);
+        if (!output.hasRemaining()) {
+            emitter.emit(output.flip());
+            output = emitter.acquire();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+/**
+ * Generates data keys for {@link EncryptTransform} and unwraps them for {@link DecryptTransform}.
+ */
+public interface KeyProvider {
+
+    DataKey generateDataKey();
+
+    byte[] unwrap(byte[] wrapped);
+
+    class DataKey {
+        private final byte[] plaintext;
+        private final byte[] wrapped;
+
+        public DataKey(byte[] plaintext, byte[] wrapped) {
+            this.plaintext = plaintext;
+            this.wrapped = wrapped;
+        }
+
+        public byte[] getPlaintext() {
+            return plaintext;
+        }
+
+        public byte[] getWrapped() {
+            return wrapped;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.model.DataKeySpec;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+public class KmsKeyProvider implements KeyProvider {
+    private static final Map<String, String> CONTEXT = Map.of("purpose", "drportal-dbdump");
+
+    private final AWSKMS kms;
+    private final String keyId;
+
+    public KmsKeyProvider(AWSKMS kms, String keyId) {
+        this.kms = kms;
+        this.keyId = keyId;
+    }
+
+    @Override
+    public DataKey generateDataKey() {
+        final var result = kms.generateDataKey(new GenerateDataKeyRequest()
+                .withKeyId(keyId)
+                .withKeySpec(DataKeySpec.AES_256)
+                .withEncryptionContext(CONTEXT));
+        return new DataKey(toBytes(result.getPlaintext()), toBytes(result.getCiphertextBlob()));
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrapped) {
+        return toBytes(kms.decrypt(new DecryptRequest()
+                .withCiphertextBlob(ByteBuffer.wrap(wrapped))
+                .withEncryptionContext(CONTEXT)).getPlaintext());
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        final var bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,54 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Wraps data keys with a local master key instead of KMS, for tests and local runs only.
+ */
+public class LocalKeyProvider implements KeyProvider {
+    private static final int NONCE_SIZE = 12;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec masterKey;
+
+    public LocalKeyProvider(byte[] masterKey) {
+        this.masterKey = new SecretKeySpec(masterKey, "AES");
+    }
+
+    @Override
+    public DataKey generateDataKey() {
+        final var plaintext = new byte[32];
+        final var nonce = new byte[NONCE_SIZE];
+        random.nextBytes(plaintext);
+        random.nextBytes(nonce);
+        try {
+            final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(128, nonce));
+            final var encrypted = cipher.doFinal(plaintext);
+            final var wrapped = Arrays.copyOf(nonce, NONCE_SIZE + encrypted.length);
+            System.arraycopy(encrypted, 0, wrapped, NONCE_SIZE, encrypted.length);
+            return new DataKey(plaintext, wrapped);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to wrap data key", e);
+        }
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrapped) {
+        try {
+            final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(128, wrapped, 0, NONCE_SIZE));
+            return cipher.doFinal(wrapped, NONCE_SIZE, wrapped.length - NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to unwrap data key", e);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a source, a chain of transforms and a sink, each on its own thread. Stages hand over buffers of a shared
+ * {@link BufferPool} through bounded queues, so the memory in flight never exceeds the pool, and the slowest stage
+ * throttles the others.
+ */
+public class Pipeline {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final int QUEUE_DEPTH = 4;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BufferPool pool;
+    private final List<Stage> stages = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private Sink sink;
+
+    public Pipeline(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    public Pipeline source(String name, Source source) {
+        if (!stages.isEmpty()) {
+            throw new IllegalStateException("Source must be the first stage.");
+        }
+        stages.add(new Stage(name) {
+            @Override
+            void process(BlockingQueue<ByteBuffer> in, BlockingQueue<ByteBuffer> out) throws Exception {
+                try (source) {
+                    while (true) {
+                        final var buffer = acquire();
+                        if (source.read(buffer) < 0) {
+                            pool.release(buffer);
+                            break;
+                        }
+                        stats.count(buffer.flip().remaining());
+                        put(out, buffer);
+                    }
+                }
+                put(out, END);
+            }
+        });
+        return this;
+    }
+
+    public Pipeline transform(String name, Transform transform) {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Source must be the first stage.");
+        }
+        stages.add(new Stage(name, transform.getReservedBuffers()) {
+            @Override
+            void process(BlockingQueue<ByteBuffer> in, BlockingQueue<ByteBuffer> out) throws Exception {
+                final Stage stage = this;
+                final var emitter = new Transform.Emitter() {
+                    @Override
+                    public ByteBuffer acquire() throws InterruptedException {
+                        return stage.acquire();
+                    }
+
+                    @Override
+                    public void release(ByteBuffer buffer) {
+                        pool.release(buffer);
+                    }
+
+                    @Override
+                    public void emit(ByteBuffer buffer) throws InterruptedException {
+                        stats.count(buffer.remaining());
+                        put(out, buffer);
+                    }
+                };
+
+                ByteBuffer buffer;
+                while ((buffer = take(in)) != END) {
+                    transform.apply(buffer, emitter);
+                }
+                transform.finish(emitter);
+                put(out, END);
+            }
+        });
+        return this;
+    }
+
+    public Pipeline sink(String name, Sink sink) {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Source must be the first stage.");
+        }
+        this.sink = sink;
+        stages.add(new Stage(name, sink.getReservedBuffers()) {
+            @Override
+            void process(BlockingQueue<ByteBuffer> in, BlockingQueue<ByteBuffer> out) throws Exception {
+                ByteBuffer buffer;
+                while ((buffer = take(in)) != END) {
+                    stats.count(buffer.remaining());
+                    sink.write(buffer);
+                    pool.release(buffer);
+                }
+                sink.close();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * @return the buffers that the stages hold in hand and in the queues between them, without their reserves.
+     */
+    public static int baseBuffers(int stages) {
+        return stages + (stages - 1) * QUEUE_DEPTH;
+    }
+
+    static ThreadFactory daemon(String name) {
+        final var count = new AtomicInteger();
+        return r -> {
+            final var thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return the stats of every stage in order.
+     * @throws IllegalStateException if the pool is too small for the stages, which would otherwise wait on each other
+     * for buffers forever.
+     */
+    public List<StageStats> run() throws IOException, InterruptedException {
+        if (sink == null) {
+            throw new IllegalStateException("Sink must be the last stage.");
+        }
+        final var required = baseBuffers(stages.size()) + stages.stream().mapToInt(s -> s.reserve).sum();
+        if (pool.getCapacity() < required) {
+            sink.abort();
+            throw new IllegalStateException("Buffer pool of " + pool.getCapacity() + " buffers is less than "
+                    + required + " that the stages need.");
+        }
+
+        final var threads = new ArrayList<Thread>();
+        BlockingQueue<ByteBuffer> in = null;
+        for (var stage : stages) {
+            final var out = stage == stages.get(stages.size() - 1) ? null : new ArrayBlockingQueue<ByteBuffer>(QUEUE_DEPTH);
+            final var queue = in;
+            final var thread = new Thread(() -> stage.run(queue, out, threads), "pipeline-" + stage.stats.getName());
+            thread.setDaemon(true);
+            threads.add(thread);
+            in = out;
+        }
+
+        threads.forEach(Thread::start);
+        try {
+            for (var thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            sink.abort();
+            throw e;
+        }
+
+        final var cause = failure.get();
+        if (cause != null) {
+            sink.abort();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Pipeline failed", cause);
+        }
+
+        final var stats = new ArrayList<StageStats>();
+        stages.forEach(s -> stats.add(s.stats));
+        stats.forEach(s -> log.debug("Stage {}", s));
+        return stats;
+    }
+
+    private abstract class Stage {
+        final StageStats stats;
+        final int reserve;
+
+        Stage(String name) {
+            this(name, 0);
+        }
+
+        Stage(String name, int reserve) {
+            this.stats = new StageStats(name);
+            this.reserve = reserve;
+        }
+
+        abstract void process(BlockingQueue<ByteBuffer> in, BlockingQueue<ByteBuffer> out) throws Exception;
+
+        void run(BlockingQueue<ByteBuffer> in, BlockingQueue<ByteBuffer> out, List<Thread> threads) {
+            final var start = System.nanoTime();
+            try {
+                process(in, out);
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+            } catch (Exception | Error e) {
+                if (failure.compareAndSet(null, e)) {
+                    log.warn("Stage " + stats.getName() + " failed", e);
+                    threads.forEach(Thread::interrupt);
+                }
+            } finally {
+                stats.setTotal(System.nanoTime() - start);
+            }
+        }
+
+        ByteBuffer acquire() throws InterruptedException {
+            final var start = System.nanoTime();
+            final var buffer = pool.acquire();
+            stats.addWait(System.nanoTime() - start);
+            return buffer;
+        }
+
+        ByteBuffer take(BlockingQueue<ByteBuffer> in) throws InterruptedException {
+            final var start = System.nanoTime();
+            final var buffer = in.take();
+            stats.addWait(System.nanoTime() - start);
+            return buffer;
+        }
+
+        void put(BlockingQueue<ByteBuffer> out, ByteBuffer buffer) throws InterruptedException {
+            final var start = System.nanoTime();
+            out.put(buffer);
+            stats.addWait(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the standard output of a process. Its standard error is kept for the message of the failure that
+ * {@link #close()} reports when the process exits with an error, after its output has already been read.
+ */
+public class ProcessSource implements Source {
+    private static final int MAX_ERROR = 64 << 10;
+
+    private final String name;
+    private final Process process;
+    private final ReadableByteChannel channel;
+    private final ByteArrayOutputStream error = new ByteArrayOutputStream();
+    private final Thread errorReader;
+    private boolean ended;
+
+    /**
+     * @param environment added to the environment of the process, which keeps secrets off its command line.
+     */
+    public ProcessSource(List<String> command, Map<String, String> environment) throws IOException {
+        final var builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        this.name = command.get(0);
+        this.process = builder.start();
+        this.channel = Channels.newChannel(process.getInputStream());
+        this.errorReader = Pipeline.daemon(name + "-stderr").newThread(this::readError);
+        errorReader.start();
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final var n = channel.read(buffer);
+            if (n < 0) {
+                ended = true;
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @throws IOException if the process exits with an error after its whole output is read, so that a partial
+     * output is never taken as complete. A process closed before that is killed instead.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (!ended) {
+            process.destroyForcibly();
+        }
+
+        final int exit;
+        try {
+            exit = process.waitFor();
+            errorReader.join();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        }
+        if (ended && exit != 0) {
+            final String message;
+            synchronized (error) {
+                message = error.toString(StandardCharsets.UTF_8).trim();
+            }
+            throw new IOException(name + " exited with " + exit + ": " + message);
+        }
+    }
+
+    private void readError() {
+        final var buffer = new byte[8192];
+        try (final var stream = process.getErrorStream()) {
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                synchronized (error) {
+                    error.write(buffer, 0, Math.max(0, Math.min(n, MAX_ERROR - error.size())));
+                }
+            }
+        } catch (IOException ignored) {
+            // the process is gone, and so is the rest of its error.
+        }
+    }
+}
@@ -0,0 +1,250 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Uploads the stream as a multipart upload, with a few parts in flight at once. Parts are staged in buffers of the
+ * pool, which go back to it once the part is uploaded, so the staged parts count against the same memory ceiling.
+ */
+public class S3MultipartSink implements Sink {
+    public static final int MIN_PART_SIZE = 8 << 20;
+    private static final int MAX_PARTS = 10_000;
+    private static final int MAX_UPLOADS = 4;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final BufferPool pool;
+    private final int partBuffers;
+    private final ExecutorService uploads = Executors.newFixedThreadPool(MAX_UPLOADS, Pipeline.daemon("s3-upload"));
+    private final Semaphore permits = new Semaphore(MAX_UPLOADS);
+    private final List<Future<PartETag>> parts = new ArrayList<>();
+    private String uploadId;
+    private List<ByteBuffer> part;
+    private long length;
+    private volatile RuntimeException failure;
+
+    /**
+     * @param partSize rounded up to whole buffers of the pool.
+     */
+    public S3MultipartSink(AmazonS3 s3, String bucket, String key, ObjectMetadata metadata, int partSize,
+                           BufferPool pool) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.metadata = metadata;
+        this.pool = pool;
+        this.partBuffers = reservedBuffersOf(partSize, pool.getBufferSize());
+    }
+
+    /**
+     * @return the part size to fit the expected length into the maximum number of parts.
+     */
+    public static int partSizeOf(long expectedLength) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_PART_SIZE, expectedLength / (MAX_PARTS - 1) + 1));
+    }
+
+    /**
+     * @return the buffers of the part being filled. Parts being uploaded hold theirs too, but always give them back.
+     */
+    @Override
+    public int getReservedBuffers() {
+        return partBuffers;
+    }
+
+    public static int reservedBuffersOf(int partSize, int bufferSize) {
+        return (Math.max(MIN_PART_SIZE, partSize) - 1) / bufferSize + 1;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException, InterruptedException {
+        if (failure != null) {
+            throw new IOException("Unable to upload part to s3://" + bucket + "/" + key, failure);
+        }
+        if (uploadId == null) {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+        }
+
+        while (buffer.hasRemaining()) {
+            if (part == null) {
+                permits.acquire();
+                part = new ArrayList<>(partBuffers);
+                length = 0;
+            }
+            if (part.isEmpty() || !part.get(part.size() - 1).hasRemaining()) {
+                part.add(pool.acquire());
+            }
+
+            final var target = part.get(part.size() - 1);
+            final var n = Math.min(buffer.remaining(), target.remaining());
+            target.put(buffer.slice().limit(n));
+            buffer.position(buffer.position() + n);
+            length += n;
+            if (part.size() == partBuffers && !target.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+            }
+            if (part != null || parts.isEmpty()) {
+                if (part == null) {
+                    permits.acquire();
+                    part = new ArrayList<>();
+                    length = 0;
+                }
+                submit();
+            }
+
+            final var etags = new ArrayList<PartETag>();
+            for (var future : parts) {
+                etags.add(future.get());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+            log.debug("Uploaded {} parts to s3://{}/{}", etags.size(), bucket, key);
+        } catch (ExecutionException e) {
+            abort();
+            throw new IOException("Unable to upload to s3://" + bucket + "/" + key, e.getCause());
+        } finally {
+            uploads.shutdownNow();
+        }
+    }
+
+    @Override
+    public void abort() {
+        uploads.shutdownNow();
+        if (part != null) {
+            part.forEach(pool::release);
+            part = null;
+        }
+        if (uploadId != null) {
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+                uploadId = null;
+            } catch (RuntimeException e) {
+                log.warn("Unable to abort upload " + uploadId, e);
+            }
+        }
+    }
+
+    private void submit() {
+        final var buffers = part;
+        final var size = length;
+        final var number = parts.size() + 1;
+        part = null;
+        buffers.forEach(ByteBuffer::flip);
+        parts.add(uploads.submit(() -> {
+            try {
+                return s3.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(number)
+                        .withPartSize(size)
+                        .withInputStream(new BuffersInputStream(buffers))).getPartETag();
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                buffers.forEach(pool::release);
+                permits.release();
+            }
+        }));
+    }
+
+    /**
+     * Reads a part from its buffers, and supports mark and reset so that the client can retry the part.
+     */
+    private static class BuffersInputStream extends InputStream {
+        private final List<ByteBuffer> buffers;
+        private int index;
+        private int markIndex;
+        private int markPosition;
+
+        BuffersInputStream(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public int read() {
+            final var buffer = next();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            final var buffer = next();
+            if (buffer == null) {
+                return -1;
+            }
+            final var n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            final var buffer = next();
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            markIndex = index;
+            markPosition = index < buffers.size() ? buffers.get(index).position() : 0;
+        }
+
+        @Override
+        public synchronized void reset() {
+            for (int i = markIndex; i < Math.min(index + 1, buffers.size()); i++) {
+                buffers.get(i).position(i == markIndex ? markPosition : 0);
+            }
+            index = markIndex;
+        }
+
+        private ByteBuffer next() {
+            while (index < buffers.size() && !buffers.get(index).hasRemaining()) {
+                index++;
+            }
+            return index < buffers.size() ? buffers.get(index) : null;
+        }
+    }
+}
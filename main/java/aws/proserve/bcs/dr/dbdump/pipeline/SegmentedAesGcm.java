@@ -0,0 +1,114 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * The format of an encrypted stream: a header carrying the wrapped data key, followed by AES-GCM segments of a fixed
+ * plaintext size, the last of which may be shorter or empty. Every segment is encrypted on its own, with its index as
+ * the nonce and its index and last flag as the associated data, so segments can be processed in parallel or read at
+ * random, while reordering and truncation are still detected.
+ *
+ * <pre>
+ * header:  magic "DRPE" | version (1) | segment size (4) | wrapped key length (2) | wrapped key
+ * segment: ciphertext | tag (16)
+ * </pre>
+ */
+public class SegmentedAesGcm {
+    public static final int TAG_SIZE = 16;
+    static final int FIXED_HEADER_SIZE = 11;
+    private static final int MAGIC = 0x44525045;
+    private static final byte VERSION = 1;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final SecretKeySpec key;
+    private final int segmentSize;
+    private final byte[] header;
+
+    SegmentedAesGcm(byte[] key, byte[] wrappedKey, int segmentSize) {
+        this.key = new SecretKeySpec(key, "AES");
+        this.segmentSize = segmentSize;
+        this.header = ByteBuffer.allocate(FIXED_HEADER_SIZE + wrappedKey.length)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .putInt(segmentSize)
+                .putShort((short) wrappedKey.length)
+                .put(wrappedKey)
+                .array();
+    }
+
+    /**
+     * @param header the complete header, see {@link #headerSizeOf(ByteBuffer)}.
+     */
+    public static SegmentedAesGcm open(ByteBuffer header, KeyProvider keyProvider) throws IOException {
+        final var size = headerSizeOf(header);
+        if (header.remaining() < size) {
+            throw new IOException("Incomplete header of encrypted stream");
+        }
+
+        final var buffer = header.duplicate();
+        buffer.position(buffer.position() + 5);
+        final var segmentSize = buffer.getInt();
+        final var wrappedKey = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(wrappedKey);
+        return new SegmentedAesGcm(keyProvider.unwrap(wrappedKey), wrappedKey, segmentSize);
+    }
+
+    /**
+     * @param prefix at least {@link #FIXED_HEADER_SIZE} bytes from the start of the stream.
+     */
+    public static int headerSizeOf(ByteBuffer prefix) throws IOException {
+        if (prefix.remaining() < FIXED_HEADER_SIZE) {
+            throw new IOException("Incomplete header of encrypted stream");
+        }
+
+        final var position = prefix.position();
+        if (prefix.getInt(position) != MAGIC || prefix.get(position + 4) != VERSION) {
+            throw new IOException("Not an encrypted stream of a supported version");
+        }
+        return FIXED_HEADER_SIZE + (prefix.getShort(position + 9) & 0xFFFF);
+    }
+
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return the offset of a segment in the stream, to read it at random.
+     */
+    public long offsetOf(long index) {
+        return header.length + index * (segmentSize + TAG_SIZE);
+    }
+
+    public void encrypt(long index, boolean last, ByteBuffer plaintext, ByteBuffer ciphertext) throws IOException {
+        process(Cipher.ENCRYPT_MODE, index, last, plaintext, ciphertext);
+    }
+
+    public void decrypt(long index, boolean last, ByteBuffer ciphertext, ByteBuffer plaintext) throws IOException {
+        process(Cipher.DECRYPT_MODE, index, last, ciphertext, plaintext);
+    }
+
+    private void process(int mode, long index, boolean last, ByteBuffer input, ByteBuffer output) throws IOException {
+        final var nonce = ByteBuffer.allocate(12).putLong(4, index).array();
+        final var aad = ByteBuffer.allocate(9).putLong(index).put((byte) (last ? 1 : 0)).array();
+        try {
+            final var cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(aad);
+            cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to process segment " + index, e);
+        }
+    }
+}
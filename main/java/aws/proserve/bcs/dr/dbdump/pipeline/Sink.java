@@ -0,0 +1,33 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface Sink {
+
+    /**
+     * The buffer is released once it returns, so it should not be kept.
+     */
+    void write(ByteBuffer buffer) throws IOException, InterruptedException;
+
+    /**
+     * @return the most buffers of the pool that it holds at once, which the pool has to have on top of the stages.
+     */
+    default int getReservedBuffers() {
+        return 0;
+    }
+
+    /**
+     * Called once at the end of the stream.
+     */
+    void close() throws IOException, InterruptedException;
+
+    /**
+     * Called instead of {@link #close()} if any stage fails.
+     */
+    default void abort() {
+    }
+}
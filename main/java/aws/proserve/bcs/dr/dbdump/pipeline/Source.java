@@ -0,0 +1,19 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface Source extends AutoCloseable {
+
+    /**
+     * @return the number of bytes read into the buffer, or {@code -1} at the end of the stream.
+     */
+    int read(ByteBuffer buffer) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+/**
+ * The utilization of a stage is the share of its time not spent waiting on a buffer or a queue.
+ */
+public class StageStats {
+    private final String name;
+    private long bytes;
+    private long buffers;
+    private long waitNanos;
+    private long totalNanos;
+
+    StageStats(String name) {
+        this.name = name;
+    }
+
+    void count(int bytes) {
+        this.bytes += bytes;
+        this.buffers++;
+    }
+
+    void addWait(long nanos) {
+        this.waitNanos += nanos;
+    }
+
+    void setTotal(long nanos) {
+        this.totalNanos = nanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getBuffers() {
+        return buffers;
+    }
+
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public double getUtilization() {
+        return totalNanos == 0 ? 0 : (double) (totalNanos - waitNanos) / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes in %d buffers, %.1f%% busy of %d ms",
+                name, bytes, buffers, getUtilization() * 100, totalNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+
+/**
+ * Archives the files under a folder in the ustar format as it reads them, so that no archive is written to disk.
+ * Entries are named relative to the folder and sorted, which puts every directory before its files. Files from
+ * 8 GB up have their size in the base-256 form of GNU tar.
+ */
+public class TarSource implements Source {
+    private static final int BLOCK = 512;
+    private static final int RECORD = 20 * BLOCK;
+    private static final int NAME_SIZE = 100;
+    private static final int PREFIX_SIZE = 155;
+    private static final long MAX_OCTAL_SIZE = 1L << 33;
+
+    private final Path folder;
+    private final Iterator<Path> paths;
+    private ByteBuffer pending = ByteBuffer.allocate(0);
+    private FileChannel file;
+    private long fileRemaining;
+    private long filePadding;
+    private long offset;
+    private boolean finished;
+
+    public TarSource(Path folder) throws IOException {
+        this.folder = folder;
+        try (final var walk = Files.walk(folder)) {
+            this.paths = walk.filter(p -> !p.equals(folder)).sorted().collect(Collectors.toList()).iterator();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        final var start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (pending.hasRemaining()) {
+                final var n = Math.min(pending.remaining(), buffer.remaining());
+                buffer.put(pending.slice().limit(n));
+                pending.position(pending.position() + n);
+            } else if (file != null) {
+                readFile(buffer);
+            } else if (paths.hasNext()) {
+                next(paths.next());
+            } else if (!finished) {
+                // two zero blocks end the archive, which is padded to whole records.
+                final var end = offset + buffer.position() - start + 2 * BLOCK;
+                pending = ByteBuffer.allocate((int) ((end + RECORD - 1) / RECORD * RECORD - end + 2 * BLOCK));
+                finished = true;
+            } else {
+                break;
+            }
+        }
+
+        final var n = buffer.position() - start;
+        offset += n;
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private void readFile(ByteBuffer buffer) throws IOException {
+        if (fileRemaining == 0) {
+            file.close();
+            file = null;
+            pending = ByteBuffer.allocate((int) filePadding);
+            return;
+        }
+
+        final var limit = buffer.limit();
+        buffer.limit((int) Math.min(limit, buffer.position() + fileRemaining));
+        try {
+            final var n = file.read(buffer);
+            if (n < 0) {
+                throw new IOException("File shrank while being archived, " + fileRemaining + " bytes short");
+            }
+            fileRemaining -= n;
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    private void next(Path path) throws IOException {
+        final var relative = folder.relativize(path).toString().replace('\\', '/');
+        final var mtime = Files.getLastModifiedTime(path).toMillis() / 1000;
+        if (Files.isDirectory(path)) {
+            pending = ByteBuffer.wrap(header(relative + "/", 0, mtime, true));
+        } else {
+            final var size = Files.size(path);
+            pending = ByteBuffer.wrap(header(relative, size, mtime, false));
+            file = FileChannel.open(path, StandardOpenOption.READ);
+            fileRemaining = size;
+            filePadding = (BLOCK - size % BLOCK) % BLOCK;
+        }
+    }
+
+    private static byte[] header(String name, long size, long mtime, boolean directory) throws IOException {
+        final var header = new byte[BLOCK];
+        final var bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= NAME_SIZE) {
+            System.arraycopy(bytes, 0, header, 0, bytes.length);
+        } else {
+            // the name goes after the last slash that leaves both halves short enough.
+            int split = -1;
+            for (int i = Math.min(PREFIX_SIZE, bytes.length - 1); i > 0 && split < 0; i--) {
+                if (bytes[i] == '/' && bytes.length - i - 1 <= NAME_SIZE && bytes.length - i - 1 > 0) {
+                    split = i;
+                }
+            }
+            if (split < 0) {
+                throw new IOException("Name is too long to archive: " + name);
+            }
+            System.arraycopy(bytes, split + 1, header, 0, bytes.length - split - 1);
+            System.arraycopy(bytes, 0, header, 345, split);
+        }
+
+        octal(header, 100, 8, directory ? 0755 : 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        if (size < MAX_OCTAL_SIZE) {
+            octal(header, 124, 12, size);
+        } else {
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        octal(header, 136, 12, mtime);
+        header[156] = (byte) (directory ? '5' : '0');
+        System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes the value as zero-padded octal digits followed by a NUL.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        final var digits = Long.toOctalString(value);
+        final var padded = "0".repeat(length - 1 - digits.length()) + digits;
+        System.arraycopy(padded.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,38 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface Transform {
+
+    /**
+     * Takes the ownership of the buffer, which has to be either emitted or released.
+     */
+    void apply(ByteBuffer buffer, Emitter emitter) throws IOException, InterruptedException;
+
+    /**
+     * @return the most buffers of the pool that it holds at once besides the one it is given, which the pool has to
+     * have on top of the stages.
+     */
+    default int getReservedBuffers() {
+        return 0;
+    }
+
+    /**
+     * Called once at the end of the stream, to emit any trailing bytes.
+     */
+    default void finish(Emitter emitter) throws IOException, InterruptedException {
+    }
+
+    interface Emitter {
+
+        ByteBuffer acquire() throws InterruptedException;
+
+        void release(ByteBuffer buffer);
+
+        void emit(ByteBuffer buffer) throws InterruptedException;
+    }
+}
@@ -0,0 +1,413 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.dbdump.DbDumpConstants;
+import aws.proserve.bcs.dr.dbdump.pipeline.BufferPool;
+import aws.proserve.bcs.dr.dbdump.pipeline.DecryptTransform;
+import aws.proserve.bcs.dr.dbdump.pipeline.KmsKeyProvider;
+import aws.proserve.bcs.dr.dbdump.pipeline.Pipeline;
+import aws.proserve.bcs.dr.dbdump.pipeline.Sink;
+import aws.proserve.bcs.dr.dbdump.pipeline.Source;
+import com.amazonaws.jmespath.ObjectMapperSingleton;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Dumps synthetic databases from a local MySQL to a local S3 end to end, restores every dump into a second MySQL and
+ * compares the checksums of the tables, then reports throughput, peak RSS, peak disk and the time of each phase.
+ * <p>
+ * The results are compared with the baseline of the same format and shape in {@code dbdump.baseline}, which the first
+ * run of a shape records. Throughput lower or peaks higher than the baseline by more than {@code dbdump.tolerance} fail
+ * the run. The shape is set by the properties of {@link SyntheticSchema#fromProperties()}, and
+ * <ul>
+ * <li>{@code dbdump.mysqld}: the server binary, {@code mysqld} by default;</li>
+ * <li>{@code dbdump.minio}: the MinIO binary, {@code minio} by default;</li>
+ * <li>{@code dbdump.formats}: the formats to dump, {@code sql,tab} by default;</li>
+ * <li>{@code dbdump.encrypt}: whether dumps are encrypted by the KMS stand-in;</li>
+ * <li>{@code dbdump.memoryLimitMb}: the memory limit of a dump, 64 by default.</li>
+ * </ul>
+ * The clients {@code mysql}, {@code mysqldump} and {@code mysqlimport}, and {@code gunzip} and {@code tar}, are run
+ * from the path.
+ */
+public class DumpLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(DumpLoadTest.class);
+    private static final String BUCKET = "dbdump-load";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String THROUGHPUT = "throughputMbPerSecond";
+    private static final String PEAK_RSS = "peakRssMb";
+    private static final String PEAK_DISK = "peakDiskMb";
+
+    public static void main(String[] args) throws Exception {
+        final var schema = SyntheticSchema.fromProperties();
+        final var formats = System.getProperty("dbdump.formats", "sql,tab").split(",");
+        final var encrypt = Boolean.getBoolean("dbdump.encrypt");
+        final var baseline = Path.of(System.getProperty("dbdump.baseline", "test/resources/dump-baseline.json"));
+        final var tolerance = Double.parseDouble(System.getProperty("dbdump.tolerance", "0.2"));
+        final var mysqld = System.getProperty("dbdump.mysqld", "mysqld");
+
+        final var work = Files.createTempDirectory("dbdump-load-");
+        Files.createDirectories(Path.of(DbDumpConstants.DBDUMP_FOLDER));
+        final var results = new TreeMap<String, Map<String, Double>>();
+        try (final var source = LocalMySql.start(mysqld, work.resolve("source"));
+             final var target = LocalMySql.start(mysqld, work.resolve("target"));
+             final var s3 = LocalS3.start(System.getProperty("dbdump.minio", "minio"), work.resolve("s3"))) {
+            final var component = LocalComponent.build(s3.getEndpoint(), BUCKET, "");
+            component.s3().createBucket(BUCKET);
+
+            var start = System.nanoTime();
+            try (final var connection = source.connect()) {
+                schema.create(connection);
+            }
+            final var size = sizeOf(source, schema);
+            log.info("Generated {} of {} MB in {} s", schema.getSignature(), size >> 20,
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+
+            for (var format : formats) {
+                final var parameter = new DbParameter();
+                parameter.setHost("127.0.0.1");
+                parameter.setPort(source.getPort());
+                parameter.setUsername("root");
+                parameter.setPasswordId("local");
+                parameter.setDatabases(schema.getDatabases());
+                parameter.setFormat(DumpFormat.valueOf(format));
+                parameter.setMemoryLimitMb(Integer.getInteger("dbdump.memoryLimitMb", 64));
+                parameter.setKmsKeyId(encrypt ? "local" : null);
+
+                final var monitor = new Monitor(Path.of(DbDumpConstants.DBDUMP_FOLDER));
+                start = System.nanoTime();
+                final var name = component.dumpMySql().dump(parameter);
+                final var millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                monitor.stop();
+
+                final var key = DbDumpConstants.DBDUMP_FOLDER.substring(1) + "/" + name;
+                final var entry = component.catalog().entries().stream()
+                        .filter(e -> key.equals(e.getId()))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalStateException("Dump " + key + " is not cataloged"));
+
+                start = System.nanoTime();
+                restore(component, entry, target, work.resolve("restore-" + format));
+                final var restoreMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                verify(source, target, schema);
+
+                final var result = new LinkedHashMap<String, Double>();
+                result.put(THROUGHPUT, size / 1048.576 / Math.max(1, millis));
+                result.put(PEAK_RSS, monitor.getPeakRss() / 1048576.0);
+                result.put(PEAK_DISK, monitor.getPeakDisk() / 1048576.0);
+                results.put(format + (encrypt ? ".encrypted" : "") + "/" + schema.getSignature(), result);
+                log.info("Dumped {} as {} to {} bytes in {} ms, restored in {} ms, {}, phases {}", format,
+                        entry.getCodec(), entry.getSize(), millis, restoreMillis, result, entry.getPhases());
+
+                try (final var connection = target.connect();
+                     final var statement = connection.createStatement()) {
+                    for (var database : schema.getDatabases()) {
+                        statement.execute("drop database " + database);
+                    }
+                }
+            }
+        }
+
+        final var regressions = compare(baseline, results, tolerance);
+        regressions.forEach(r -> log.error("Regression: {}", r));
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+
+    private static long sizeOf(LocalMySql server, SyntheticSchema schema) throws SQLException {
+        final var databases = schema.getDatabases();
+        try (final var connection = server.connect();
+             final var statement = connection.prepareStatement("select sum(DATA_LENGTH + INDEX_LENGTH)"
+                     + " from information_schema.TABLES where TABLE_SCHEMA in ("
+                     + String.join(", ", Collections.nCopies(databases.length, "?")) + ")")) {
+            for (int i = 0; i < databases.length; i++) {
+                statement.setString(i + 1, databases[i]);
+            }
+            try (final var rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Restores a dump the way an operator would: a {@code sql} dump is piped into {@code mysql}, and a {@code tab}
+     * dump is unpacked, its schema run by {@code mysql} and its tables loaded by {@code mysqlimport}.
+     */
+    private static void restore(LocalComponent component, CatalogEntry entry, LocalMySql target, Path folder)
+            throws IOException, InterruptedException {
+        Files.createDirectories(folder);
+        if (entry.getCodec().startsWith(DumpFormat.sql.name())) {
+            final var mysql = String.join(" ", target.client("mysql"));
+            final var process = new ProcessBuilder("sh", "-c", "gunzip -c | " + mysql)
+                    .redirectErrorStream(true)
+                    .redirectOutput(folder.resolve("mysql.log").toFile())
+                    .start();
+            download(component, entry, process.getOutputStream());
+            await(process, folder.resolve("mysql.log"));
+            return;
+        }
+
+        final var process = new ProcessBuilder("tar", "xzf", "-", "-C", folder.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(folder.resolve("tar.log").toFile())
+                .start();
+        download(component, entry, process.getOutputStream());
+        await(process, folder.resolve("tar.log"));
+
+        await(new ProcessBuilder(target.client("mysql"))
+                .redirectInput(folder.resolve("schema.sql").toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(folder.resolve("mysql.log").toFile())
+                .start(), folder.resolve("mysql.log"));
+        for (var database : entry.getDatabases()) {
+            final List<Path> files;
+            try (final var list = Files.list(folder.resolve(database))) {
+                files = list.filter(p -> p.toString().endsWith(".txt")).sorted().collect(Collectors.toList());
+            }
+            for (var file : files) {
+                final var columns = Path.of(file.toString().replaceFirst("\\.txt$", ".columns"));
+                final var command = target.client("mysqlimport");
+                command.add("--local");
+                command.add("--columns=" + Files.readString(columns).trim());
+                command.add(database);
+                command.add(file.toString());
+                await(new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(folder.resolve("mysqlimport.log").toFile())
+                        .start(), folder.resolve("mysqlimport.log"));
+            }
+        }
+    }
+
+    /**
+     * Downloads a dump into the stream, decrypting it if it is encrypted.
+     */
+    private static void download(LocalComponent component, CatalogEntry entry, OutputStream out)
+            throws IOException, InterruptedException {
+        try (final var object = component.s3().getObject(BUCKET, entry.getKey())) {
+            final var pipeline = new Pipeline(new BufferPool(BUFFER_SIZE, 32L << 20))
+                    .source("s3", new StreamSource(object.getObjectContent()));
+            if (entry.getCodec().endsWith(".segmented-aes-gcm")) {
+                pipeline.transform("decrypt", new DecryptTransform(new KmsKeyProvider(component.kms(), "local")));
+            }
+            pipeline.sink("restore", new StreamSink(out)).run();
+        }
+    }
+
+    private static void await(Process process, Path log) throws IOException, InterruptedException {
+        final var exit = process.waitFor();
+        if (exit != 0) {
+            throw new IOException("Restore exited with " + exit + ": " + Files.readString(log));
+        }
+    }
+
+    private static void verify(LocalMySql source, LocalMySql target, SyntheticSchema schema) throws SQLException {
+        try (final var sourceConnection = source.connect();
+             final var targetConnection = target.connect()) {
+            for (var database : schema.getDatabases()) {
+                for (var table : schema.getTables()) {
+                    final var expected = checksumOf(sourceConnection, database + "." + table);
+                    final var actual = checksumOf(targetConnection, database + "." + table);
+                    if (expected == null || !expected.equals(actual)) {
+                        throw new IllegalStateException("Checksum of restored " + database + "." + table + " is "
+                                + actual + " rather than " + expected);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String checksumOf(Connection connection, String table) throws SQLException {
+        try (final var statement = connection.createStatement();
+             final var rs = statement.executeQuery("checksum table " + table)) {
+            return rs.next() ? rs.getString(2) : null;
+        }
+    }
+
+    /**
+     * Adds the results without a baseline to the baseline file, and compares the others with theirs.
+     *
+     * @return the regressions, empty if there is none.
+     */
+    private static List<String> compare(Path file, Map<String, Map<String, Double>> results, double tolerance)
+            throws IOException {
+        final var mapper = ObjectMapperSingleton.getObjectMapper();
+        final var baselines = Files.exists(file)
+                ? mapper.readValue(file.toFile(), new TypeReference<TreeMap<String, Map<String, Double>>>() {
+        })
+                : new TreeMap<String, Map<String, Double>>();
+
+        final var regressions = new ArrayList<String>();
+        var recorded = false;
+        for (var result : results.entrySet()) {
+            final var baseline = baselines.get(result.getKey());
+            if (baseline == null) {
+                baselines.put(result.getKey(), result.getValue());
+                recorded = true;
+                continue;
+            }
+
+            result.getValue().forEach((metric, value) -> {
+                final var expected = baseline.get(metric);
+                if (expected == null) {
+                    return;
+                }
+                final var regressed = THROUGHPUT.equals(metric)
+                        ? value < expected * (1 - tolerance)
+                        : value > expected * (1 + tolerance);
+                if (regressed) {
+                    regressions.add(String.format("%s %s is %.1f against a baseline of %.1f",
+                            result.getKey(), metric, value, expected));
+                }
+            });
+        }
+
+        if (recorded) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            mapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), baselines);
+            log.info("Recorded baseline to {}", file);
+        }
+        return regressions;
+    }
+
+    /**
+     * Samples the resident memory of this process and the space used in the dump folder, above what it used before.
+     * Child processes such as {@code mysqldump} are not counted.
+     */
+    private static class Monitor {
+        private static final long INTERVAL_MILLIS = 100;
+
+        private final Path folder;
+        private final long initialDisk;
+        private final Thread thread;
+        private volatile boolean stopped;
+        private volatile long peakRss;
+        private volatile long peakDisk;
+
+        Monitor(Path folder) throws IOException {
+            this.folder = folder;
+            this.initialDisk = sizeOf(folder);
+            this.thread = new Thread(this::sample, "dbdump-monitor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long getPeakRss() {
+            return peakRss;
+        }
+
+        long getPeakDisk() {
+            return peakDisk;
+        }
+
+        void stop() throws InterruptedException {
+            stopped = true;
+            thread.join();
+        }
+
+        private void sample() {
+            while (true) {
+                try {
+                    peakRss = Math.max(peakRss, rss());
+                    peakDisk = Math.max(peakDisk, sizeOf(folder) - initialDisk);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Unable to sample", e); // files come and go while the dump runs.
+                }
+                if (stopped) {
+                    return;
+                }
+                try {
+                    Thread.sleep(INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private static long rss() throws IOException {
+            for (var line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) << 10;
+                }
+            }
+            return 0;
+        }
+
+        private static long sizeOf(Path folder) throws IOException {
+            try (final var walk = Files.walk(folder)) {
+                return walk.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+            }
+        }
+    }
+
+    private static class StreamSource implements Source {
+        private final ReadableByteChannel channel;
+
+        StreamSource(InputStream stream) {
+            this.channel = Channels.newChannel(stream);
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int total = 0;
+            while (buffer.hasRemaining()) {
+                final var n = channel.read(buffer);
+                if (n < 0) {
+                    return total == 0 ? -1 : total;
+                }
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    private static class StreamSink implements Sink {
+        private final WritableByteChannel channel;
+
+        StreamSink(OutputStream stream) {
+            this.channel = Channels.newChannel(stream);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.lambda.annotation.Default;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.s3.AmazonS3;
+import dagger.Component;
+
+import javax.inject.Singleton;
+
+/**
+ * The workers of a dump wired to the stand-ins of {@link LocalModule} instead of AWS.
+ */
+@Singleton
+@Component(modules = LocalModule.class)
+interface LocalComponent {
+
+    static LocalComponent build(String s3Endpoint, String bucket, String password) {
+        return DaggerLocalComponent.builder()
+                .localModule(new LocalModule(s3Endpoint, bucket, password))
+                .build();
+    }
+
+    DumpMySql.Worker dumpMySql();
+
+    DumpCatalog catalog();
+
+    @Default
+    AmazonS3 s3();
+
+    @Default
+    AWSKMS kms();
+}
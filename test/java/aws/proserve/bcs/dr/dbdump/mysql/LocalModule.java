@@ -0,0 +1,156 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import aws.proserve.bcs.dr.dbdump.pipeline.LocalKeyProvider;
+import aws.proserve.bcs.dr.lambda.annotation.Default;
+import aws.proserve.bcs.dr.s3.S3Constants;
+import aws.proserve.bcs.dr.secret.SecretManager;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.jmespath.ObjectMapperSingleton;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersResult;
+import com.amazonaws.services.simplesystemsmanagement.model.Parameter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dagger.Module;
+import dagger.Provides;
+
+import javax.inject.Singleton;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Binds the clients of a dump to local stand-ins: S3 to MinIO, the bucket parameter of SSM to the bucket of the run,
+ * KMS to a {@link LocalKeyProvider}, and every secret to the password of the local MySQL.
+ */
+@Module
+class LocalModule {
+    private final String s3Endpoint;
+    private final String bucket;
+    private final String password;
+
+    LocalModule(String s3Endpoint, String bucket, String password) {
+        this.s3Endpoint = s3Endpoint;
+        this.bucket = bucket;
+        this.password = password;
+    }
+
+    @Provides
+    @Singleton
+    @Default
+    AmazonS3 s3() {
+        return AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(s3Endpoint, "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(
+                        new BasicAWSCredentials(LocalS3.ACCESS_KEY, LocalS3.SECRET_KEY)))
+                .withPathStyleAccessEnabled(true)
+                .build();
+    }
+
+    @Provides
+    @Singleton
+    @Default
+    AWSSimpleSystemsManagement ssm() {
+        return stub(AWSSimpleSystemsManagement.class, (method, args) -> {
+            if (method.getName().equals("getParameters")) {
+                return new GetParametersResult().withParameters(new Parameter()
+                        .withName(S3Constants.PARAM_BUCKET)
+                        .withValue(bucket));
+            }
+            throw new UnsupportedOperationException("SSM stand-in does not support " + method.getName());
+        });
+    }
+
+    @Provides
+    @Singleton
+    @Default
+    AWSKMS kms() {
+        final var masterKey = new byte[32];
+        new SecureRandom().nextBytes(masterKey);
+        final var keys = new LocalKeyProvider(masterKey);
+        return stub(AWSKMS.class, (method, args) -> {
+            switch (method.getName()) {
+                case "generateDataKey":
+                    final var key = keys.generateDataKey();
+                    return new GenerateDataKeyResult()
+                            .withKeyId(((GenerateDataKeyRequest) args[0]).getKeyId())
+                            .withPlaintext(ByteBuffer.wrap(key.getPlaintext()))
+                            .withCiphertextBlob(ByteBuffer.wrap(key.getWrapped()));
+                case "decrypt":
+                    final var blob = ((DecryptRequest) args[0]).getCiphertextBlob().duplicate();
+                    final var wrapped = new byte[blob.remaining()];
+                    blob.get(wrapped);
+                    return new DecryptResult().withPlaintext(ByteBuffer.wrap(keys.unwrap(wrapped)));
+                default:
+                    throw new UnsupportedOperationException("KMS stand-in does not support " + method.getName());
+            }
+        });
+    }
+
+    @Provides
+    @Singleton
+    SecretManager secretManager() {
+        return new SecretManager(stub(AWSSecretsManager.class, (method, args) -> {
+            throw new UnsupportedOperationException("Secrets Manager stand-in does not support " + method.getName());
+        })) {
+            @Override
+            public String getSecret(String id) {
+                return password;
+            }
+        };
+    }
+
+    @Provides
+    @Singleton
+    ObjectMapper objectMapper() {
+        return ObjectMapperSingleton.getObjectMapper();
+    }
+
+    @Provides
+    @Singleton
+    ExecutorService executor() {
+        final var count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            final var thread = new Thread(r, "dbdump-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a client whose calls go to the handler, apart from those of {@link Object} and {@code shutdown}.
+     */
+    private static <T> T stub(Class<T> type, BiFunction<Method, Object[], Object> handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + " stand-in";
+                case "shutdown":
+                    return null;
+                default:
+                    return handler.apply(method, args);
+            }
+        }));
+    }
+}
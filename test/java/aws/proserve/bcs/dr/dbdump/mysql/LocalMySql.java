@@ -0,0 +1,136 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway MySQL or MariaDB server on a free port of the loopback, with a data directory of its own and a root
+ * user without password. The server binary is the one installed locally.
+ */
+class LocalMySql implements AutoCloseable {
+    private static final long START_TIMEOUT_MILLIS = 120_000;
+
+    private final Process process;
+    private final Path folder;
+    private final int port;
+
+    private LocalMySql(Process process, Path folder, int port) {
+        this.process = process;
+        this.folder = folder;
+        this.port = port;
+    }
+
+    static LocalMySql start(String binary, Path folder) throws IOException, InterruptedException {
+        final var data = folder.resolve("data");
+        Files.createDirectories(folder);
+        final var user = "--user=" + System.getProperty("user.name");
+        if (run(List.of(binary, "--version"), folder.resolve("version.log")).contains("MariaDB")) {
+            final var installer = Path.of(binary).resolveSibling("mariadb-install-db").toString();
+            run(List.of(installer, "--no-defaults", user, "--datadir=" + data,
+                    "--auth-root-authentication-method=normal"), folder.resolve("install.log"));
+        } else {
+            run(List.of(binary, "--no-defaults", user, "--initialize-insecure", "--datadir=" + data),
+                    folder.resolve("install.log"));
+        }
+
+        final var port = freePort();
+        final var command = new ArrayList<>(List.of(binary, "--no-defaults", user,
+                "--datadir=" + data,
+                "--port=" + port,
+                "--bind-address=127.0.0.1",
+                "--socket=" + folder.resolve("mysqld.sock"),
+                "--pid-file=" + folder.resolve("mysqld.pid"),
+                "--skip-log-bin",
+                "--local-infile=1"));
+        final var process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(folder.resolve("mysqld.log").toFile())
+                .start();
+        final var server = new LocalMySql(process, folder, port);
+        server.await();
+        return server;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    Connection connect() throws SQLException {
+        return DriverManager.getConnection("jdbc:mysql://127.0.0.1:" + port
+                + "?useSSL=false&characterEncoding=UTF-8&rewriteBatchedStatements=true&allowLoadLocalInfile=true",
+                "root", "");
+    }
+
+    /**
+     * @return the arguments of a client of this server, such as {@code mysql} or {@code mysqlimport}.
+     */
+    List<String> client(String name) {
+        return new ArrayList<>(List.of(name, "--no-defaults", "--protocol=tcp", "--host=127.0.0.1",
+                "--port=" + port, "--user=root"));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private void await() throws IOException, InterruptedException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("MySQL driver is not on the class path", e);
+        }
+
+        final var deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IOException("mysqld exited with " + process.exitValue() + ", see " + folder.resolve("mysqld.log"));
+            }
+            try (final var ignored = connect()) {
+                return;
+            } catch (SQLException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    close();
+                    throw new IOException("mysqld did not start in time, see " + folder.resolve("mysqld.log"), e);
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    /**
+     * @return the output of the command, which has to succeed.
+     */
+    static String run(List<String> command, Path log) throws IOException, InterruptedException {
+        final var process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        final var exit = process.waitFor();
+        final var output = Files.readString(log);
+        if (exit != 0) {
+            throw new IOException(command.get(0) + " exited with " + exit + ": " + output);
+        }
+        return output;
+    }
+
+    static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
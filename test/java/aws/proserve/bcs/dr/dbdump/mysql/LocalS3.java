@@ -0,0 +1,78 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway MinIO server on a free port of the loopback, which stands in for S3. The server binary is the one
+ * installed locally.
+ */
+class LocalS3 implements AutoCloseable {
+    static final String ACCESS_KEY = "minioadmin";
+    static final String SECRET_KEY = "minioadmin";
+    private static final long START_TIMEOUT_MILLIS = 60_000;
+
+    private final Process process;
+    private final String endpoint;
+
+    private LocalS3(Process process, String endpoint) {
+        this.process = process;
+        this.endpoint = endpoint;
+    }
+
+    static LocalS3 start(String binary, Path folder) throws IOException, InterruptedException {
+        Files.createDirectories(folder);
+        final var port = LocalMySql.freePort();
+        final var builder = new ProcessBuilder(binary, "server", folder.resolve("data").toString(),
+                "--address", "127.0.0.1:" + port, "--quiet")
+                .redirectErrorStream(true)
+                .redirectOutput(folder.resolve("minio.log").toFile());
+        builder.environment().put("MINIO_ROOT_USER", ACCESS_KEY);
+        builder.environment().put("MINIO_ROOT_PASSWORD", SECRET_KEY);
+
+        final var server = new LocalS3(builder.start(), "http://127.0.0.1:" + port);
+        final var deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (!server.isLive()) {
+            if (!server.process.isAlive() || System.currentTimeMillis() > deadline) {
+                server.close();
+                throw new IOException("MinIO did not start, see " + folder.resolve("minio.log"));
+            }
+            Thread.sleep(200);
+        }
+        return server;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private boolean isLive() {
+        try {
+            final var connection = (HttpURLConnection) new URL(endpoint + "/minio/health/live").openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout(1000);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
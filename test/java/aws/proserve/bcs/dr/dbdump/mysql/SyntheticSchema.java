@@ -0,0 +1,145 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package aws.proserve.bcs.dr.dbdump.mysql;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Databases of a configurable shape. Every table has an auto-increment key, columns that cycle through integer,
+ * decimal, datetime and text, an index on its first column, and a virtual generated column, which the {@code tab}
+ * format leaves out. Rows are random but the same for the same shape.
+ */
+class SyntheticSchema {
+    private static final int BATCH = 1000;
+
+    private final int databases;
+    private final int tables;
+    private final int rows;
+    private final int columns;
+    private final int textLength;
+
+    SyntheticSchema(int databases, int tables, int rows, int columns, int textLength) {
+        this.databases = databases;
+        this.tables = tables;
+        this.rows = rows;
+        this.columns = Math.max(1, columns);
+        this.textLength = Math.max(1, textLength);
+    }
+
+    /**
+     * @return the shape of {@code dbdump.databases}, {@code dbdump.tables}, {@code dbdump.rows},
+     * {@code dbdump.columns} and {@code dbdump.textLength}.
+     */
+    static SyntheticSchema fromProperties() {
+        return new SyntheticSchema(
+                Integer.getInteger("dbdump.databases", 2),
+                Integer.getInteger("dbdump.tables", 8),
+                Integer.getInteger("dbdump.rows", 100_000),
+                Integer.getInteger("dbdump.columns", 8),
+                Integer.getInteger("dbdump.textLength", 200));
+    }
+
+    /**
+     * @return the shape, which tells baselines apart.
+     */
+    String getSignature() {
+        return "d" + databases + "-t" + tables + "-r" + rows + "-c" + columns + "-l" + textLength;
+    }
+
+    String[] getDatabases() {
+        return IntStream.range(0, databases).mapToObj(d -> "load_" + d).toArray(String[]::new);
+    }
+
+    String[] getTables() {
+        return IntStream.range(0, tables).mapToObj(t -> "t_" + t).toArray(String[]::new);
+    }
+
+    void create(Connection connection) throws SQLException {
+        final var definitions = new ArrayList<String>();
+        definitions.add("id bigint not null auto_increment primary key");
+        for (int c = 0; c < columns; c++) {
+            definitions.add("c_" + c + " " + typeOf(c));
+        }
+        definitions.add("g bigint as (id * 2) virtual");
+        definitions.add("index (c_0)");
+
+        final var names = IntStream.range(0, columns).mapToObj(c -> "c_" + c).collect(Collectors.joining(", "));
+        final var marks = IntStream.range(0, columns).mapToObj(c -> "?").collect(Collectors.joining(", "));
+        final var databaseNames = getDatabases();
+        final var tableNames = getTables();
+        for (int d = 0; d < databaseNames.length; d++) {
+            try (final var statement = connection.createStatement()) {
+                statement.execute("create database " + databaseNames[d]);
+            }
+            for (int t = 0; t < tableNames.length; t++) {
+                final var table = databaseNames[d] + "." + tableNames[t];
+                try (final var statement = connection.createStatement()) {
+                    statement.execute("create table " + table + " (" + String.join(", ", definitions) + ")");
+                }
+                insert(connection, "insert into " + table + " (" + names + ") values (" + marks + ")",
+                        new Random(d * 1_000_003L + t));
+            }
+        }
+    }
+
+    private void insert(Connection connection, String sql, Random random) throws SQLException {
+        connection.setAutoCommit(false);
+        try (final var statement = connection.prepareStatement(sql)) {
+            for (int r = 1; r <= rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    switch (c % 4) {
+                        case 0:
+                            statement.setInt(c + 1, random.nextInt());
+                            break;
+                        case 1:
+                            statement.setBigDecimal(c + 1, BigDecimal.valueOf(random.nextInt(1_000_000_000), 2));
+                            break;
+                        case 2:
+                            statement.setTimestamp(c + 1, new Timestamp(946_684_800_000L
+                                    + (random.nextLong() & Long.MAX_VALUE) % 1_000_000_000_000L / 1000 * 1000));
+                            break;
+                        default:
+                            statement.setString(c + 1, text(random));
+                    }
+                }
+                statement.addBatch();
+                if (r % BATCH == 0 || r == rows) {
+                    statement.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private String typeOf(int column) {
+        switch (column % 4) {
+            case 0:
+                return "int";
+            case 1:
+                return "decimal(12, 2)";
+            case 2:
+                return "datetime";
+            default:
+                return "varchar(" + textLength + ")";
+        }
+    }
+
+    private String text(Random random) {
+        final var length = textLength / 2 + random.nextInt(textLength - textLength / 2 + 1);
+        final var builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}